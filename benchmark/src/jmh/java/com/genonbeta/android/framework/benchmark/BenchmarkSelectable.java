@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.benchmark;
+
+import com.genonbeta.android.framework.object.StableSelectable;
+import com.genonbeta.android.framework.util.actionperformer.IPerformerEngine;
+import com.genonbeta.android.framework.util.actionperformer.PerformerEngine;
+import com.genonbeta.android.framework.util.actionperformer.PerformerEngineProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The item that the benchmarks select. Its hash code and equality are based on its id like most of the real items.
+ */
+public class BenchmarkSelectable implements StableSelectable
+{
+    private final long mId;
+    private boolean mSelected;
+
+    public BenchmarkSelectable(long id)
+    {
+        mId = id;
+    }
+
+    public static List<BenchmarkSelectable> createList(int size)
+    {
+        List<BenchmarkSelectable> list = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++)
+            list.add(new BenchmarkSelectable(i));
+
+        return list;
+    }
+
+    public static int[] createPositions(int size)
+    {
+        int[] positions = new int[size];
+
+        for (int i = 0; i < size; i++)
+            positions[i] = i;
+
+        return positions;
+    }
+
+    public static PerformerEngineProvider createProvider(final PerformerEngine engine)
+    {
+        return new PerformerEngineProvider()
+        {
+            @Override
+            public IPerformerEngine getPerformerEngine()
+            {
+                return engine;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        return obj instanceof BenchmarkSelectable && ((BenchmarkSelectable) obj).mId == mId;
+    }
+
+    @Override
+    public long getSelectableId()
+    {
+        return mId;
+    }
+
+    @Override
+    public String getSelectableTitle()
+    {
+        return String.valueOf(mId);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int) (mId ^ (mId >>> 32));
+    }
+
+    @Override
+    public boolean isSelectableSelected()
+    {
+        return mSelected;
+    }
+
+    @Override
+    public boolean setSelectableSelected(boolean selected)
+    {
+        mSelected = selected;
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.benchmark;
+
+import com.genonbeta.android.framework.util.actionperformer.EngineConnection;
+import com.genonbeta.android.framework.util.actionperformer.PerformerEngine;
+import com.genonbeta.android.framework.util.actionperformer.PerformerEngineProvider;
+import com.genonbeta.android.framework.util.actionperformer.PositionalEngineConnection;
+import com.genonbeta.android.framework.util.actionperformer.SelectableProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures selecting and then deselecting every item of a list with the different calls of the connections. Each
+ * invocation leaves the items in the state it found them, so no per-invocation setup is needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EngineConnectionBenchmark
+{
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<BenchmarkSelectable> mList;
+    private int[] mPositions;
+    private EngineConnection<BenchmarkSelectable> mConnection;
+    private PositionalEngineConnection<BenchmarkSelectable> mPositionalConnection;
+
+    @Setup
+    public void setUp()
+    {
+        PerformerEngine engine = new PerformerEngine();
+        PerformerEngineProvider provider = BenchmarkSelectable.createProvider(engine);
+        SelectableProvider<BenchmarkSelectable> selectableProvider = new SelectableProvider<BenchmarkSelectable>()
+        {
+            @Override
+            public List<BenchmarkSelectable> getSelectableList()
+            {
+                return mList;
+            }
+        };
+
+        mList = BenchmarkSelectable.createList(size);
+        mPositions = BenchmarkSelectable.createPositions(size);
+
+        mConnection = new EngineConnection<>(provider);
+        mConnection.setSelectableProvider(selectableProvider);
+        engine.ensureSlot(provider, mConnection);
+
+        mPositionalConnection = new PositionalEngineConnection<>(provider);
+        mPositionalConnection.setSelectableProvider(selectableProvider);
+        engine.ensureSlot(provider, mPositionalConnection);
+    }
+
+    @Benchmark
+    public int setSelectedSingle()
+    {
+        for (int i = 0; i < size; i++)
+            mConnection.setSelected(mList.get(i), i, true);
+
+        int count = mConnection.getSelectedItemCount();
+
+        for (int i = 0; i < size; i++)
+            mConnection.setSelected(mList.get(i), i, false);
+
+        return count;
+    }
+
+    @Benchmark
+    public int setSelectedList()
+    {
+        mConnection.setSelected(mList, mPositions, true);
+        int count = mConnection.getSelectedItemCount();
+        mConnection.setSelected(mList, mPositions, false);
+
+        return count;
+    }
+
+    @Benchmark
+    public int setSelectedBatch()
+    {
+        mConnection.beginBatch();
+
+        for (int i = 0; i < size; i++)
+            mConnection.setSelected(mList.get(i), i, true);
+
+        mConnection.commit();
+
+        int count = mConnection.getSelectedItemCount();
+
+        mConnection.beginBatch();
+
+        for (int i = 0; i < size; i++)
+            mConnection.setSelected(mList.get(i), i, false);
+
+        mConnection.commit();
+
+        return count;
+    }
+
+    @Benchmark
+    public int setSelectedPositional() throws Exception
+    {
+        for (int i = 0; i < size; i++)
+            mPositionalConnection.setSelected(i);
+
+        int count = mPositionalConnection.getSelectedItemCount();
+
+        for (int i = 0; i < size; i++)
+            mPositionalConnection.setSelected(i);
+
+        return count;
+    }
+
+    @Benchmark
+    public int setRangeSelectedPositional()
+    {
+        mPositionalConnection.setRangeSelected(0, size, true);
+        int count = mPositionalConnection.getSelectedItemCount();
+        mPositionalConnection.setRangeSelected(0, size, false);
+
+        return count;
+    }
+}
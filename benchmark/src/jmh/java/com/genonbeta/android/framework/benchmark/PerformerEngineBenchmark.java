@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.benchmark;
+
+import com.genonbeta.android.framework.object.Selectable;
+import com.genonbeta.android.framework.util.actionperformer.EngineConnection;
+import com.genonbeta.android.framework.util.actionperformer.IBaseEngineConnection;
+import com.genonbeta.android.framework.util.actionperformer.IPerformerEngine;
+import com.genonbeta.android.framework.util.actionperformer.PerformerEngine;
+import com.genonbeta.android.framework.util.actionperformer.PerformerEngineProvider;
+import com.genonbeta.android.framework.util.actionperformer.PerformerListener;
+import com.genonbeta.android.framework.util.actionperformer.SelectableProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the calls made on {@link PerformerEngine} itself: informing a growing number of listeners and compiling
+ * the selection of a connection that has every item selected.
+ */
+public class PerformerEngineBenchmark
+{
+    @State(Scope.Thread)
+    public static class ListenerState
+    {
+        @Param({"1", "10", "100"})
+        public int listenerCount;
+
+        PerformerEngine engine;
+        EngineConnection<BenchmarkSelectable> connection;
+        BenchmarkSelectable selectable = new BenchmarkSelectable(0);
+        // set by the benchmark method on each call, so that the listeners consume into the one JMH gives it
+        Blackhole blackhole;
+
+        @Setup
+        public void setUp()
+        {
+            engine = new PerformerEngine();
+            connection = new EngineConnection<>(BenchmarkSelectable.createProvider(engine));
+
+            for (int i = 0; i < listenerCount; i++)
+                engine.addPerformerListener(new ConsumingListener(this));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SelectionState
+    {
+        @Param({"1000", "10000", "100000"})
+        public int size;
+
+        PerformerEngine engine;
+
+        @Setup
+        public void setUp()
+        {
+            final List<BenchmarkSelectable> list = BenchmarkSelectable.createList(size);
+            PerformerEngineProvider provider;
+
+            engine = new PerformerEngine();
+            provider = BenchmarkSelectable.createProvider(engine);
+
+            EngineConnection<BenchmarkSelectable> connection = new EngineConnection<>(provider);
+            connection.setSelectableProvider(new SelectableProvider<BenchmarkSelectable>()
+            {
+                @Override
+                public List<BenchmarkSelectable> getSelectableList()
+                {
+                    return list;
+                }
+            });
+
+            engine.ensureSlot(provider, connection);
+            connection.setSelected(list, BenchmarkSelectable.createPositions(size), true);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void informListeners(ListenerState state, Blackhole blackhole)
+    {
+        state.blackhole = blackhole;
+        state.engine.informListeners(state.connection, state.selectable, true, 0);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<? extends Selectable> getSelectionList(SelectionState state)
+    {
+        return state.engine.getSelectionList();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int getSelectionCount(SelectionState state)
+    {
+        return state.engine.getSelectionCount();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void iterateSelection(SelectionState state, Blackhole blackhole)
+    {
+        for (Selectable selectable : state.engine.getSelection())
+            blackhole.consume(selectable);
+    }
+
+    private static class ConsumingListener implements PerformerListener
+    {
+        private final ListenerState mState;
+
+        ConsumingListener(ListenerState state)
+        {
+            mState = state;
+        }
+
+        @Override
+        public void onSelected(IPerformerEngine engine, IBaseEngineConnection owner, Selectable selectable,
+                               boolean isSelected, int position)
+        {
+            mState.blackhole.consume(selectable);
+        }
+
+        @Override
+        public void onSelected(IPerformerEngine engine, IBaseEngineConnection owner,
+                               List<? extends Selectable> selectableList, boolean isSelected, int[] positions)
+        {
+            mState.blackhole.consume(selectableList);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stub for the benchmarks covering only the calls that the framework makes.
+ */
+public class Bundle
+{
+    private final Map<String, Object> mValues = new HashMap<>();
+
+    public int getInt(String key, int defaultValue)
+    {
+        Object value = mValues.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public long[] getLongArray(String key)
+    {
+        Object value = mValues.get(key);
+        return value instanceof long[] ? (long[]) value : null;
+    }
+
+    public void putInt(String key, int value)
+    {
+        mValues.put(key, value);
+    }
+
+    public void putLongArray(String key, long[] value)
+    {
+        mValues.put(key, value);
+    }
+}
@@ -0,0 +1,19 @@
+package androidx.recyclerview.widget;
+
+/**
+ * Stub for the benchmarks covering only the members that the framework refers to.
+ */
+public class RecyclerView
+{
+    public static final int NO_POSITION = -1;
+
+    public abstract static class ViewHolder
+    {
+        private int mPosition = NO_POSITION;
+
+        public final int getAdapterPosition()
+        {
+            return mPosition;
+        }
+    }
+}
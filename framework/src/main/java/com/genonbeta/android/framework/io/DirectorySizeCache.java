@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps what was counted in the directories during the previous scans in a file, so that a directory that hasn't
+ * changed since doesn't need to be listed again. An entry holds the names of the files that are directly in a
+ * directory and the keys of its subdirectories, which are their paths. It is valid as long as the directory has the
+ * same modification date, which changes when a child is added, removed or renamed, but not when a child is changed in
+ * place or something changes deeper in the tree. That is why the lengths of the files are read and the subdirectories
+ * are visited again, and only the listing of the directories is skipped.
+ *
+ * <pre>
+ *     DirectorySizeCache cache = new DirectorySizeCache(new File(context.getCacheDir(), "directory_sizes"));
+ *     calculator.setCache(cache);
+ *     calculator.calculate(directory);
+ *     cache.save();
+ * </pre>
+ *
+ * @see DirectorySizeCalculator
+ */
+public class DirectorySizeCache
+{
+    public static final String TAG = DirectorySizeCache.class.getSimpleName();
+
+    private static final int VERSION = 2;
+
+    private final File mStoreFile;
+    private final Map<String, Entry> mEntryMap = new ConcurrentHashMap<>();
+    private volatile boolean mLoaded;
+
+    /**
+     * @param storeFile to load the entries from and save them to
+     */
+    public DirectorySizeCache(File storeFile)
+    {
+        mStoreFile = storeFile;
+    }
+
+    /**
+     * Remove all the entries. The file is not changed until {@link #save()} is called.
+     */
+    public void clear()
+    {
+        mLoaded = true;
+        mEntryMap.clear();
+    }
+
+    /**
+     * @param key          of the directory which is its path
+     * @param lastModified is the current modification date of the directory
+     * @return the entry if there is one and the directory hasn't changed since it was saved, or null otherwise
+     */
+    @Nullable
+    public Entry get(String key, long lastModified)
+    {
+        ensureLoaded();
+
+        Entry entry = mEntryMap.get(key);
+
+        // some providers don't report the dates of the directories, and then we can't tell if they are changed
+        return entry == null || lastModified == 0 || entry.lastModified != lastModified ? null : entry;
+    }
+
+    /**
+     * Remove the entry of a directory and the entries of the directories under it.
+     *
+     * @param key of the directory
+     */
+    public void invalidate(String key)
+    {
+        ensureLoaded();
+
+        Entry entry = mEntryMap.remove(key);
+
+        if (entry != null)
+            for (String directory : entry.directories)
+                invalidate(directory);
+    }
+
+    /**
+     * Read the entries from the file if they weren't read before. This is done when the cache is first used, and can
+     * be called beforehand on a worker thread so that the scan doesn't wait for it.
+     */
+    public synchronized void load()
+    {
+        if (mLoaded)
+            return;
+
+        DataInputStream inputStream = null;
+
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(mStoreFile)));
+
+            if (inputStream.readInt() != VERSION)
+                return;
+
+            int count = inputStream.readInt();
+
+            for (int i = 0; i < count; i++) {
+                String key = inputStream.readUTF();
+                long lastModified = inputStream.readLong();
+                String[] directories = readStrings(inputStream);
+                String[] files = readStrings(inputStream);
+
+                mEntryMap.put(key, new Entry(key, lastModified, directories, files));
+            }
+        } catch (FileNotFoundException ignored) {
+        } catch (IOException e) {
+            Log.w(TAG, "The saved entries are corrupted and will be ignored: " + e);
+            mEntryMap.clear();
+        } finally {
+            DocumentFile.closeQuietly(inputStream);
+            // only after the entries are read, so the other threads wait for them in load() until then
+            mLoaded = true;
+        }
+    }
+
+    /**
+     * Keep the entry for the directory it belongs to. If the directory had an entry before, the entries of the
+     * subdirectories that are no longer in it are removed.
+     *
+     * @param entry to keep
+     */
+    public void put(Entry entry)
+    {
+        ensureLoaded();
+
+        Entry previous = mEntryMap.put(entry.key, entry);
+
+        if (previous != null) {
+            Set<String> directorySet = new HashSet<>(Arrays.asList(entry.directories));
+
+            for (String directory : previous.directories)
+                if (!directorySet.contains(directory))
+                    invalidate(directory);
+        }
+    }
+
+    /**
+     * Write the entries to the file. The file is replaced only after it is written fully, so a failed save doesn't
+     * lose the entries that were saved before.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save() throws IOException
+    {
+        ensureLoaded();
+
+        File temporaryFile = new File(mStoreFile.getPath() + ".tmp");
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                temporaryFile)));
+        Entry[] entries = mEntryMap.values().toArray(new Entry[0]);
+
+        try {
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(entries.length);
+
+            for (Entry entry : entries) {
+                outputStream.writeUTF(entry.key);
+                outputStream.writeLong(entry.lastModified);
+                writeStrings(outputStream, entry.directories);
+                writeStrings(outputStream, entry.files);
+            }
+        } finally {
+            outputStream.close();
+        }
+
+        if (!temporaryFile.renameTo(mStoreFile))
+            throw new IOException("Could not replace " + mStoreFile);
+    }
+
+    /**
+     * @return the number of the directories that are known
+     */
+    public int size()
+    {
+        ensureLoaded();
+        return mEntryMap.size();
+    }
+
+    private void ensureLoaded()
+    {
+        if (!mLoaded)
+            load();
+    }
+
+    private static String[] readStrings(DataInputStream inputStream) throws IOException
+    {
+        String[] strings = new String[inputStream.readInt()];
+
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = inputStream.readUTF();
+
+        return strings;
+    }
+
+    private static void writeStrings(DataOutputStream outputStream, String[] strings) throws IOException
+    {
+        outputStream.writeInt(strings.length);
+
+        for (String string : strings)
+            outputStream.writeUTF(string);
+    }
+
+    /**
+     * What was directly in a directory the last time it was listed.
+     */
+    public static class Entry
+    {
+        public final String key;
+        public final long lastModified;
+        public final String[] directories;
+        public final String[] files;
+
+        /**
+         * @param key          of the directory
+         * @param lastModified is the modification date of the directory when it was listed
+         * @param directories  the keys of the subdirectories
+         * @param files        the names of the files
+         */
+        public Entry(String key, long lastModified, String[] directories, String[] files)
+        {
+            this.key = key;
+            this.lastModified = lastModified;
+            this.directories = directories;
+            this.files = files;
+        }
+    }
+}
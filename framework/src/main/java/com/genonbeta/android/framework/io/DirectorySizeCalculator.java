@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import android.os.Build;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import com.genonbeta.android.framework.util.FileUtils;
+import com.genonbeta.android.framework.util.Stoppable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes the total length of the files in a directory and counts them with the directories under it. The
+ * directories are listed in parallel, each by a task that hands its subdirectories to other tasks, and the totals that
+ * are known so far are reported while they are being counted. On the versions before API 21, the same walk is done on
+ * the calling thread.
+ * <p>
+ * With a {@link DirectorySizeCache}, a local directory that has the same modification date as it had during the
+ * previous scan is not listed again, and only the lengths of the files that were in it are read. The documents of
+ * the storage access framework are always listed, because a listing is a single query that also brings the dates of
+ * the subdirectories, while checking the subdirectories of a cached directory would need a query for each of them.
+ *
+ * <pre>
+ *     DirectorySizeCalculator calculator = new DirectorySizeCalculator(stoppable);
+ *     calculator.setProgressListener(listener);
+ *     DirectorySizeCalculator.Result result = calculator.calculate(directory);
+ * </pre>
+ */
+public class DirectorySizeCalculator
+{
+    public static final String TAG = DirectorySizeCalculator.class.getSimpleName();
+
+    public static final long DEFAULT_PROGRESS_INTERVAL = 500;
+
+    private final Stoppable mStoppable;
+    private DirectorySizeCache mCache;
+    private int mParallelism = Runtime.getRuntime().availableProcessors();
+    private long mProgressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private ProgressListener mProgressListener;
+
+    /**
+     * @param stoppable to stop the calculation with
+     */
+    public DirectorySizeCalculator(Stoppable stoppable)
+    {
+        mStoppable = stoppable;
+    }
+
+    /**
+     * Calculate the size of the given directory.
+     *
+     * @param directory to be calculated
+     * @return the total length of the files with the number of the files and directories, not counting the given
+     * directory
+     * @throws InterruptedException if the calculation was stopped before it could finish
+     */
+    public Result calculate(DocumentFile directory) throws InterruptedException
+    {
+        // read the attributes of each local file at once, since both the type and the length will be needed
+        if (directory instanceof LocalDocumentFile && !((LocalDocumentFile) directory).isCachingAttributes())
+            directory = new LocalDocumentFile(directory.getParentFile(), ((LocalDocumentFile) directory).getFile(),
+                    true);
+
+        TaskState state = new TaskState(mProgressListener, mProgressInterval);
+
+        if (Build.VERSION.SDK_INT >= 21 && mParallelism > 1) {
+            ForkJoinPool pool = new ForkJoinPool(mParallelism);
+
+            try {
+                pool.invoke(new DirectoryTask(directory, state));
+            } finally {
+                pool.shutdown();
+            }
+        } else
+            calculateSequentially(directory, state);
+
+        if (mStoppable.isInterrupted())
+            throw new InterruptedException("The task was interrupted");
+
+        state.report(true);
+
+        return new Result(state.length.get(), state.fileCount.get(), state.directoryCount.get());
+    }
+
+    @Nullable
+    public DirectorySizeCache getCache()
+    {
+        return mCache;
+    }
+
+    public int getParallelism()
+    {
+        return mParallelism;
+    }
+
+    public long getProgressInterval()
+    {
+        return mProgressInterval;
+    }
+
+    @Nullable
+    public ProgressListener getProgressListener()
+    {
+        return mProgressListener;
+    }
+
+    /**
+     * @param cache to skip listing the local directories that haven't changed since the previous scan with, or null
+     *              to list all of them
+     */
+    public void setCache(@Nullable DirectorySizeCache cache)
+    {
+        mCache = cache;
+    }
+
+    /**
+     * @param parallelism the number of the threads to list the directories with, 1 to list on the calling thread
+     */
+    public void setParallelism(int parallelism)
+    {
+        mParallelism = parallelism;
+    }
+
+    /**
+     * @param interval the minimum time in milliseconds between two progress reports
+     */
+    public void setProgressInterval(long interval)
+    {
+        mProgressInterval = interval;
+    }
+
+    public void setProgressListener(@Nullable ProgressListener listener)
+    {
+        mProgressListener = listener;
+    }
+
+    private void calculateSequentially(DocumentFile directory, TaskState state)
+    {
+        List<DocumentFile> directoryList = new ArrayList<>();
+
+        visit(directory, directoryList, state);
+
+        for (DocumentFile child : directoryList) {
+            if (mStoppable.isInterrupted())
+                return;
+
+            calculateSequentially(child, state);
+        }
+    }
+
+    /**
+     * Count the files that are directly in the directory and collect its subdirectories, using the cache if the
+     * directory hasn't changed.
+     */
+    private void visit(DocumentFile directory, List<DocumentFile> directoryList, TaskState state)
+    {
+        DirectorySizeCache cache = directory instanceof LocalDocumentFile ? mCache : null;
+        String key = cache == null ? null : ((LocalDocumentFile) directory).getFile().getPath();
+        DirectorySizeCache.Entry entry = cache == null ? null : cache.get(key, directory.lastModified());
+
+        if (entry != null) {
+            File directoryFile = ((LocalDocumentFile) directory).getFile();
+            long length = 0;
+
+            for (String childKey : entry.directories) {
+                DocumentFile child = new LocalDocumentFile(directory, new File(childKey), true);
+
+                if (!child.isDirectory()) {
+                    // it was there when the date was taken, so the date can't be trusted for this directory
+                    cache.invalidate(key);
+                    entry = null;
+                    directoryList.clear();
+                    break;
+                }
+
+                directoryList.add(child);
+            }
+
+            if (entry != null) {
+                // a file that is written to doesn't change the date of its directory, so its length is read again
+                for (String name : entry.files)
+                    length += new File(directoryFile, name).length();
+
+                state.onCounted(length, entry.files.length, directoryList.size());
+                return;
+            }
+        }
+
+        long lastModified = directory.lastModified();
+        long length = 0;
+        int fileCount = 0;
+        List<String> keyList = new ArrayList<>();
+        List<String> nameList = new ArrayList<>();
+        DocumentIterator iterator = null;
+
+        try {
+            iterator = directory.iterate();
+
+            while (iterator.hasNext()) {
+                if (mStoppable.isInterrupted())
+                    return;
+
+                DocumentFile file = iterator.next();
+
+                if (file.isDirectory()) {
+                    // a linked directory may point to one of its parents, which would make the walk endless, or to a
+                    // directory that is counted elsewhere, so it is skipped like TreeDeleter does
+                    if (file instanceof LocalDocumentFile
+                            && FileUtils.isSymbolicLink(((LocalDocumentFile) file).getFile()))
+                        continue;
+
+                    directoryList.add(file);
+
+                    if (cache != null)
+                        keyList.add(((LocalDocumentFile) file).getFile().getPath());
+                } else {
+                    length += file.length();
+                    fileCount++;
+
+                    if (cache != null)
+                        nameList.add(((LocalDocumentFile) file).getFile().getName());
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to list " + directory.getUri() + ": " + e);
+            state.onCounted(length, fileCount, directoryList.size());
+            return;
+        } finally {
+            DocumentFile.closeQuietly(iterator);
+        }
+
+        state.onCounted(length, fileCount, directoryList.size());
+
+        if (cache != null)
+            cache.put(new DirectorySizeCache.Entry(key, lastModified, keyList.toArray(new String[0]),
+                    nameList.toArray(new String[0])));
+    }
+
+    /**
+     * Receives the totals that are known so far at the interval given with {@link #setProgressInterval(long)} and
+     * once more when the calculation ends.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * Called on one of the threads that are counting, so it should return quickly.
+         *
+         * @param result that is known so far
+         */
+        void onProgress(Result result);
+    }
+
+    /**
+     * The total length of the files in a directory and the number of the files and the directories in it.
+     */
+    public static class Result
+    {
+        private final long mLength;
+        private final long mFileCount;
+        private final long mDirectoryCount;
+
+        public Result(long length, long fileCount, long directoryCount)
+        {
+            mLength = length;
+            mFileCount = fileCount;
+            mDirectoryCount = directoryCount;
+        }
+
+        public long getDirectoryCount()
+        {
+            return mDirectoryCount;
+        }
+
+        public long getFileCount()
+        {
+            return mFileCount;
+        }
+
+        public long getLength()
+        {
+            return mLength;
+        }
+    }
+
+    /**
+     * The totals that are shared by the tasks of a single calculation.
+     */
+    private static class TaskState
+    {
+        final ProgressListener listener;
+        final long intervalNanos;
+        final AtomicLong length = new AtomicLong();
+        final AtomicLong fileCount = new AtomicLong();
+        final AtomicLong directoryCount = new AtomicLong();
+        final AtomicLong lastReportTime = new AtomicLong(System.nanoTime());
+
+        TaskState(ProgressListener listener, long interval)
+        {
+            this.listener = listener;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+        }
+
+        /**
+         * @param directoryCount the number of the subdirectories that were found, so that the directory the
+         *                       calculation starts from is never counted
+         */
+        void onCounted(long length, int fileCount, int directoryCount)
+        {
+            this.length.addAndGet(length);
+            this.fileCount.addAndGet(fileCount);
+            this.directoryCount.addAndGet(directoryCount);
+
+            if (listener != null)
+                report(false);
+        }
+
+        void report(boolean force)
+        {
+            if (listener == null)
+                return;
+
+            long lastTime = lastReportTime.get();
+            long time = System.nanoTime();
+
+            // only the thread that moves the time forward reports, so the listener is never called concurrently
+            if (force || (time - lastTime >= intervalNanos && lastReportTime.compareAndSet(lastTime, time)))
+                listener.onProgress(new Result(length.get(), fileCount.get(), directoryCount.get()));
+        }
+    }
+
+    @RequiresApi(21)
+    private class DirectoryTask extends RecursiveAction
+    {
+        private final DocumentFile mDirectory;
+        private final TaskState mState;
+
+        DirectoryTask(DocumentFile directory, TaskState state)
+        {
+            mDirectory = directory;
+            mState = state;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (mStoppable.isInterrupted())
+                return;
+
+            List<DocumentFile> directoryList = new ArrayList<>();
+            List<DirectoryTask> taskList = new ArrayList<>();
+
+            visit(mDirectory, directoryList, mState);
+
+            for (DocumentFile directory : directoryList)
+                taskList.add(new DirectoryTask(directory, mState));
+
+            invokeAll(taskList);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The children of a directory as they were listed once, indexed by their names. Looking for a name is then a hash
+ * lookup instead of another listing, which matters when a lot of names are tried, e.g., while looking for a name
+ * that is not taken, on a provider where each listing is a query.
+ * <p>
+ * The snapshot doesn't see the changes that are made after it is taken unless they are reported with
+ * {@link #add(DocumentFile)} and {@link #remove(String)}.
+ * <p>
+ * When the snapshot ignores case, e.g., for the shared storage whose file systems don't tell "a.txt" from "A.txt",
+ * {@link #contains(String)} treats a name as taken if it is only different in case from one of the children.
+ * {@link #findFile(String)} still looks for the exact name.
+ *
+ * @see DocumentFile#snapshot()
+ */
+public class DirectorySnapshot
+{
+    private final DocumentFile mDirectory;
+    private final Map<String, DocumentFile> mNameMap;
+    // the number of the names that fold to the same key, so that one of them going doesn't free the others
+    @Nullable
+    private final Map<String, Integer> mFoldedCountMap;
+
+    public DirectorySnapshot(@NonNull DocumentFile directory)
+    {
+        this(directory, false);
+    }
+
+    /**
+     * @param directory  to list
+     * @param ignoreCase true if the names that are only different in case cannot exist together in the directory
+     */
+    public DirectorySnapshot(@NonNull DocumentFile directory, boolean ignoreCase)
+    {
+        this(directory, directory.listFiles(), ignoreCase);
+    }
+
+    /**
+     * Create a snapshot of the given children. The subclasses that look the names up on their own can give an empty
+     * array, so that the directory isn't listed.
+     *
+     * @param directory  whose children are given
+     * @param files      the children of the directory
+     * @param ignoreCase true if the names that are only different in case cannot exist together in the directory
+     */
+    protected DirectorySnapshot(@NonNull DocumentFile directory, @NonNull DocumentFile[] files, boolean ignoreCase)
+    {
+        int capacity = Math.max(16, (int) (files.length / 0.75f) + 1);
+
+        mDirectory = directory;
+        mNameMap = new HashMap<>(capacity);
+        mFoldedCountMap = ignoreCase ? new HashMap<String, Integer>(capacity) : null;
+
+        for (DocumentFile file : files) {
+            String name = file.getName();
+
+            // keep the first one like a linear search would when the provider allows the same name twice
+            if (name != null && !mNameMap.containsKey(name))
+                add(name, file);
+        }
+    }
+
+    /**
+     * Report a file that was created in the directory after the snapshot was taken.
+     *
+     * @param file that was created
+     */
+    public void add(DocumentFile file)
+    {
+        if (file.getName() != null)
+            add(file.getName(), file);
+    }
+
+    private void add(String name, DocumentFile file)
+    {
+        if (mNameMap.put(name, file) == null && mFoldedCountMap != null) {
+            String folded = fold(name);
+            Integer count = mFoldedCountMap.get(folded);
+            mFoldedCountMap.put(folded, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * @param displayName to look for
+     * @return true if the name is taken, or when ignoring case, a name that is only different in case is taken
+     */
+    public boolean contains(String displayName)
+    {
+        return mFoldedCountMap == null ? mNameMap.containsKey(displayName)
+                : mFoldedCountMap.containsKey(fold(displayName));
+    }
+
+    @Nullable
+    public DocumentFile findFile(String displayName)
+    {
+        return mNameMap.get(displayName);
+    }
+
+    public DocumentFile getDirectory()
+    {
+        return mDirectory;
+    }
+
+    /**
+     * @return true if the names that are only different in case are treated as the same by {@link #contains(String)}
+     */
+    public boolean isIgnoringCase()
+    {
+        return mFoldedCountMap != null;
+    }
+
+    /**
+     * Report a file that was deleted or renamed after the snapshot was taken.
+     *
+     * @param displayName of the file that is gone
+     */
+    public void remove(String displayName)
+    {
+        if (mNameMap.remove(displayName) == null || mFoldedCountMap == null)
+            return;
+
+        String folded = fold(displayName);
+        Integer count = mFoldedCountMap.get(folded);
+
+        if (count == null || count <= 1)
+            mFoldedCountMap.remove(folded);
+        else
+            mFoldedCountMap.put(folded, count - 1);
+    }
+
+    /**
+     * @return the number of the distinct names in the directory
+     */
+    public int size()
+    {
+        return mNameMap.size();
+    }
+
+    private static String fold(String name)
+    {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -18,15 +18,24 @@
 
 package com.genonbeta.android.framework.io;
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.net.Uri;
 import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.provider.DocumentsContract;
+import android.util.Log;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * created by: Veli
@@ -51,22 +60,76 @@ abstract public class DocumentFile
         return new LocalDocumentFile(null, file);
     }
 
+    /**
+     * @param file            to represent
+     * @param cacheAttributes true to read the attributes of the file and its children once and keep them until
+     *                        {@link #sync()} is called
+     * @return the document file representing the given file
+     * @see LocalDocumentFile#LocalDocumentFile(DocumentFile, File, boolean)
+     */
+    public static DocumentFile fromFile(File file, boolean cacheAttributes)
+    {
+        return new LocalDocumentFile(null, file, cacheAttributes);
+    }
+
     public static DocumentFile fromUri(Context context, Uri uri, boolean prepareTree) throws FileNotFoundException
     {
-        if (Build.VERSION.SDK_INT >= 21)
-            try {
-                return new TreeDocumentFile(null, context, prepareTree ? prepareUri(uri) : uri, uri);
-            } catch (Exception e) {
-                // it was expected it might not be TreeDocumentFile
-            }
+        DocumentFile documentFile = fromUri(context, new UriClassifier(context), uri, prepareTree);
+
+        if (documentFile == null)
+            throw new FileNotFoundException("Failed to create right connection for " + uri.toString());
+
+        return documentFile;
+    }
+
+    /**
+     * Create the document files for a list of uris, e.g., the ones that are shared with the app. Each uri is
+     * classified first, so it is queried only once with the type of document file it needs, and the authorities are
+     * checked once for the whole list.
+     *
+     * @param context     to query the uris with
+     * @param uriList     to create the document files for
+     * @param prepareTree true if the tree uris should be resolved to their roots
+     * @return the document files in the same order as the uris with null for the ones that couldn't be resolved
+     * @see #fromUri(Context, Uri, boolean)
+     */
+    public static DocumentFile[] fromUris(Context context, List<Uri> uriList, boolean prepareTree)
+    {
+        UriClassifier classifier = new UriClassifier(context);
+        DocumentFile[] documentFiles = new DocumentFile[uriList.size()];
+
+        for (int i = 0; i < documentFiles.length; i++)
+            documentFiles[i] = fromUri(context, classifier, uriList.get(i), prepareTree);
+
+        return documentFiles;
+    }
+
+    @Nullable
+    private static DocumentFile fromUri(Context context, UriClassifier classifier, Uri uri, boolean prepareTree)
+    {
+        UriClassifier.Kind kind = classifier.classify(uri);
+
+        if (Build.VERSION.SDK_INT >= 21) {
+            Uri documentUri = null;
+
+            if (prepareTree && (kind == UriClassifier.Kind.Tree || kind == UriClassifier.Kind.TreeDocument))
+                documentUri = prepareUri(uri);
+            else if (!prepareTree && (kind == UriClassifier.Kind.TreeDocument || kind == UriClassifier.Kind.Document))
+                documentUri = uri;
+
+            DocumentFile documentFile = documentUri == null ? null : TreeDocumentFile.from(context, documentUri, uri);
+
+            if (documentFile != null)
+                return documentFile;
+        }
 
         try {
             return new StreamDocumentFile(new StreamInfo(context, uri), uri);
         } catch (Exception e) {
-            // Now something is wrong
+            Log.w(TAG, "Failed to resolve the stream " + uri + ": " + e);
         }
 
-        throw new FileNotFoundException("Failed to create right connection for " + uri.toString());
+        return null;
     }
 
     @Override
@@ -118,6 +181,19 @@ abstract public class DocumentFile
 
     public abstract boolean exists();
 
+    /**
+     * Go over the children of this directory without listing them all at once. The implementations that can read
+     * the children as they go, e.g., local files and tree documents, do so; the others iterate over
+     * {@link #listFiles()}.
+     *
+     * @return the iterator that should be closed after it is used
+     * @throws IOException if the children cannot be listed, e.g., this is not a directory
+     */
+    public DocumentIterator iterate() throws IOException
+    {
+        return new ArrayIterator(listFiles());
+    }
+
     public abstract DocumentFile[] listFiles();
 
     public DocumentFile findFile(String displayName)
@@ -130,8 +206,52 @@ abstract public class DocumentFile
         return null;
     }
 
+    /**
+     * Map a region of this file into memory for reading. The mapping stays valid after the channel that is used to
+     * create it is closed, and it is released when the buffer is garbage collected. Unlike reading the file with a
+     * stream, only the pages that are accessed are read, so this suits reading small parts of large files, e.g., to
+     * compute a digest of a region or to show a preview.
+     *
+     * @param context to open the file with if it is not a local file
+     * @param offset  of the region in the file
+     * @param length  of the region which cannot be larger than {@link Integer#MAX_VALUE}
+     * @return the read-only buffer holding the region
+     * @throws IOException if the file cannot be opened or mapped
+     * @see #openReadChannel(Context)
+     */
+    public MappedByteBuffer map(Context context, long offset, long length) throws IOException
+    {
+        return map(openReadChannel(context), offset, length);
+    }
+
+    /**
+     * Open a channel that can read from any position of this file. For the content uris, the provider should be able
+     * to serve the file with a file descriptor, which is usually the case for the documents on a storage device, but
+     * not for the ones that are generated as they are read.
+     *
+     * @param context to open the file with if it is not a local file
+     * @return the channel that should be closed after it is used
+     * @throws IOException if the file cannot be opened or is not a regular file, e.g., a pipe
+     */
+    public FileChannel openReadChannel(Context context) throws IOException
+    {
+        return openReadChannel(context.getContentResolver(), getUri());
+    }
+
     public abstract boolean renameTo(String displayName);
 
+    /**
+     * List the children of this directory once and index them by their names, so that looking for more than one name
+     * doesn't list the directory again for each of them. The subclasses may return a snapshot that looks the names up
+     * in a cheaper way, e.g., {@link LocalDocumentFile} checks each name on the file system.
+     *
+     * @return the snapshot of the children
+     */
+    public DirectorySnapshot snapshot()
+    {
+        return new DirectorySnapshot(this);
+    }
+
     public abstract void sync() throws Exception;
 
     protected static void closeQuietly(Closeable closeable)
@@ -146,9 +266,71 @@ abstract public class DocumentFile
         }
     }
 
+    static MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException
+    {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } finally {
+            closeQuietly(channel);
+        }
+    }
+
+    static FileChannel openReadChannel(ContentResolver resolver, Uri uri) throws IOException
+    {
+        ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r");
+
+        if (descriptor == null)
+            throw new FileNotFoundException("The provider returned no file descriptor for " + uri);
+
+        if (descriptor.getStatSize() < 0) {
+            descriptor.close();
+            throw new IOException("The content is not a regular file and cannot be read at random: " + uri);
+        }
+
+        // closing the channel also closes the stream which closes the descriptor
+        return new ParcelFileDescriptor.AutoCloseInputStream(descriptor).getChannel();
+    }
+
     @RequiresApi(21)
     protected static Uri prepareUri(Uri treeUri)
     {
         return DocumentsContract.buildDocumentUriUsingTree(treeUri, DocumentsContract.getTreeDocumentId(treeUri));
     }
+
+    private static class ArrayIterator implements DocumentIterator
+    {
+        private final DocumentFile[] mFiles;
+        private int mPosition = 0;
+
+        ArrayIterator(DocumentFile[] files)
+        {
+            mFiles = files;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return mPosition < mFiles.length;
+        }
+
+        @Override
+        public DocumentFile next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            return mFiles[mPosition++];
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
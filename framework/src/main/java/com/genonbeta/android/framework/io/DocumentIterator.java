@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Goes over the children of a directory, creating them one by one as they are asked for, so that a large directory
+ * can be processed without keeping all of its children in memory and the first ones can be used before the rest is
+ * read. It holds on to what the listing needs, e.g., a directory handle or a cursor, so it should be closed after it
+ * is used, even when it is not read to the end.
+ *
+ * @see DocumentFile#iterate()
+ */
+public interface DocumentIterator extends Iterator<DocumentFile>, Closeable
+{
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the columns of the documents and the children of the directories that were recently queried, so that
+ * creating a {@link TreeDocumentFile} for a known document or finding a file in a directory that was just listed
+ * doesn't query the provider again. The entries are keyed by the authority and the id of the documents, and they
+ * are forgotten when they are older than the time-to-live or when there are more of them than the maximum size, the
+ * least recently used ones first. The listings are counted by the children they hold, so a few large directories
+ * cannot keep more than the maximum size in memory either.
+ * <p>
+ * Since the cache can't see the changes made by others, the time-to-live should be short. The changes that are made
+ * through {@link TreeDocumentFile} and the copies that are written with
+ * {@link com.genonbeta.android.framework.util.FileUtils} invalidate the related entries right away.
+ */
+public class DocumentMetadataCache
+{
+    public static final int DEFAULT_MAX_SIZE = 4096;
+    public static final long DEFAULT_TIME_TO_LIVE = 5000;
+
+    private static final DocumentMetadataCache DEFAULT = new DocumentMetadataCache(DEFAULT_MAX_SIZE,
+            DEFAULT_TIME_TO_LIVE);
+
+    private final Map<String, Entry> mEntryMap;
+    private final Map<String, Listing> mListingMap;
+    private final int mMaxSize;
+    private int mListedCount;
+    private long mTimeToLive;
+
+    /**
+     * @param maxSize    is the number of the documents and the number of the children in all the listings to keep at
+     *                   most
+     * @param timeToLive is how long an entry is valid in milliseconds
+     */
+    public DocumentMetadataCache(final int maxSize, long timeToLive)
+    {
+        mMaxSize = maxSize;
+        mTimeToLive = timeToLive;
+        // the map's own Entry type shadows ours in the anonymous classes, so ours is qualified there
+        mEntryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DocumentMetadataCache.Entry> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+        // the listings are trimmed by the number of the children they hold, see putChildren()
+        mListingMap = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return the cache that is shared by all the {@link TreeDocumentFile} instances
+     */
+    public static DocumentMetadataCache getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * @param authority of the provider
+     * @param id        of the document
+     * @return the key to refer to the document with
+     */
+    public static String createKey(String authority, String id)
+    {
+        return authority + "/" + id;
+    }
+
+    /**
+     * Forget everything.
+     */
+    public synchronized void clear()
+    {
+        mEntryMap.clear();
+        mListingMap.clear();
+        mListedCount = 0;
+    }
+
+    /**
+     * @param key of the document
+     * @return the columns of the document or null if it is not known or it has expired
+     */
+    @Nullable
+    public synchronized Entry get(String key)
+    {
+        Entry entry = mEntryMap.get(key);
+
+        if (entry != null && isExpired(entry.time)) {
+            mEntryMap.remove(key);
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * @param key of the directory
+     * @return the children of the directory or null if they are not known or have expired
+     */
+    @Nullable
+    public synchronized List<Entry> getChildren(String key)
+    {
+        Listing listing = mListingMap.get(key);
+
+        if (listing != null && isExpired(listing.time)) {
+            removeListing(key);
+            return null;
+        }
+
+        return listing == null ? null : listing.children;
+    }
+
+    public int getMaxSize()
+    {
+        return mMaxSize;
+    }
+
+    public synchronized long getTimeToLive()
+    {
+        return mTimeToLive;
+    }
+
+    /**
+     * Forget the document, the children if it is a directory, and the listing of the directory it is in.
+     *
+     * @param key of the document
+     */
+    public synchronized void invalidate(String key)
+    {
+        Entry entry = mEntryMap.remove(key);
+
+        removeListing(key);
+
+        if (entry != null && entry.parentKey != null) {
+            removeListing(entry.parentKey);
+            return;
+        }
+
+        // the parent isn't known, e.g., the entry was evicted alone, so any listing that has the document goes
+        Iterator<Listing> iterator = mListingMap.values().iterator();
+
+        while (iterator.hasNext()) {
+            Listing listing = iterator.next();
+
+            for (Entry child : listing.children) {
+                if (key.equals(child.key)) {
+                    mListedCount -= listing.children.size();
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the children of a directory, e.g., after a child is created in it.
+     *
+     * @param key of the directory
+     */
+    public synchronized void invalidateChildren(String key)
+    {
+        removeListing(key);
+    }
+
+    public synchronized void put(Entry entry)
+    {
+        Entry existing = mEntryMap.get(entry.key);
+
+        // keep the parent, which only the listings know about
+        if (entry.parentKey == null && existing != null && existing.parentKey != null)
+            entry = new Entry(entry.key, existing.parentKey, entry.id, entry.name, entry.size, entry.type,
+                    entry.flags, entry.lastModified);
+
+        mEntryMap.put(entry.key, entry);
+    }
+
+    /**
+     * Remember the full list of the children of a directory along with the children themselves.
+     *
+     * @param key      of the directory
+     * @param children of the directory whose parent keys should be the given key
+     */
+    public synchronized void putChildren(String key, List<Entry> children)
+    {
+        for (Entry child : children)
+            mEntryMap.put(child.key, child);
+
+        removeListing(key);
+
+        // a directory larger than the cache itself is not worth keeping as it would push out everything else
+        if (children.size() > mMaxSize)
+            return;
+
+        mListingMap.put(key, new Listing(Collections.unmodifiableList(new ArrayList<>(children))));
+        mListedCount += children.size();
+
+        Iterator<Listing> iterator = mListingMap.values().iterator();
+
+        while (mListedCount > mMaxSize && iterator.hasNext()) {
+            mListedCount -= iterator.next().children.size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @param timeToLive is how long an entry is valid in milliseconds
+     */
+    public synchronized void setTimeToLive(long timeToLive)
+    {
+        mTimeToLive = timeToLive;
+    }
+
+    private void removeListing(String key)
+    {
+        Listing listing = mListingMap.remove(key);
+
+        if (listing != null)
+            mListedCount -= listing.children.size();
+    }
+
+    private boolean isExpired(long time)
+    {
+        return System.currentTimeMillis() - time > mTimeToLive;
+    }
+
+    /**
+     * The columns of a document as they were when it was queried.
+     */
+    public static class Entry
+    {
+        public final String key;
+        @Nullable
+        public final String parentKey;
+        public final String id;
+        public final String name;
+        public final long size;
+        public final String type;
+        public final long flags;
+        public final long lastModified;
+        final long time = System.currentTimeMillis();
+
+        public Entry(String key, @Nullable String parentKey, String id, String name, long size, String type,
+                     long flags, long lastModified)
+        {
+            this.key = key;
+            this.parentKey = parentKey;
+            this.id = id;
+            this.name = name;
+            this.size = size;
+            this.type = type;
+            this.flags = flags;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static class Listing
+    {
+        final List<Entry> children;
+        final long time = System.currentTimeMillis();
+
+        Listing(List<Entry> children)
+        {
+            this.children = children;
+        }
+    }
+}
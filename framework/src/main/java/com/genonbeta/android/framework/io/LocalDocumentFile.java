@@ -18,14 +18,25 @@
 
 package com.genonbeta.android.framework.io;
 
+import android.content.Context;
 import android.net.Uri;
+import android.os.Build;
 import android.util.Log;
 import android.webkit.MimeTypeMap;
+import androidx.annotation.RequiresApi;
+import com.genonbeta.android.framework.util.StoppableImpl;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * created by: Veli
@@ -35,11 +46,30 @@ import java.util.List;
 public class LocalDocumentFile extends DocumentFile
 {
     private File mFile;
+    private final boolean mCacheAttributes;
+    private volatile Attributes mAttributes;
 
     public LocalDocumentFile(DocumentFile parent, File file)
+    {
+        this(parent, file, false);
+    }
+
+    /**
+     * Create an instance that can cache its attributes. When caching, whether the file exists, its type, length and
+     * modification date are read together with a single call the first time one of them is needed, and the same
+     * values are returned until {@link #sync()} is called. The children that are listed with {@link #listFiles()} are
+     * read right away and cache their attributes too, so sorting a big directory by size or date doesn't go to the
+     * disk for each comparison.
+     *
+     * @param parent          of this file or null if it is not known
+     * @param file            this instance represents
+     * @param cacheAttributes true to cache the attributes until {@link #sync()} is called
+     */
+    public LocalDocumentFile(DocumentFile parent, File file, boolean cacheAttributes)
     {
         super(parent, Uri.fromFile(file));
         mFile = file;
+        mCacheAttributes = cacheAttributes;
     }
 
     @Override
@@ -54,7 +84,7 @@ public class LocalDocumentFile extends DocumentFile
 
         try {
             target.createNewFile();
-            return new LocalDocumentFile(this, target);
+            return new LocalDocumentFile(this, target, mCacheAttributes);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -68,11 +98,27 @@ public class LocalDocumentFile extends DocumentFile
         final File target = new File(mFile, displayName);
 
         if (target.isDirectory() || target.mkdir())
-            return new LocalDocumentFile(this, target);
+            return new LocalDocumentFile(this, target, mCacheAttributes);
 
         return null;
     }
 
+    /**
+     * @return the attributes that are cached or null if caching is not enabled
+     */
+    private Attributes getAttributes()
+    {
+        if (!mCacheAttributes)
+            return null;
+
+        Attributes attributes = mAttributes;
+
+        if (attributes == null)
+            mAttributes = attributes = Attributes.read(mFile);
+
+        return attributes;
+    }
+
     public File getFile()
     {
         return mFile;
@@ -103,22 +149,29 @@ public class LocalDocumentFile extends DocumentFile
     @Override
     public String getType()
     {
-        if (mFile.isDirectory())
+        if (isDirectory())
             return "*/*";
 
         return getTypeForName(mFile.getName());
     }
 
+    public boolean isCachingAttributes()
+    {
+        return mCacheAttributes;
+    }
+
     @Override
     public boolean isDirectory()
     {
-        return mFile.isDirectory();
+        Attributes attributes = getAttributes();
+        return attributes == null ? mFile.isDirectory() : attributes.directory;
     }
 
     @Override
     public boolean isFile()
     {
-        return mFile.isFile();
+        Attributes attributes = getAttributes();
+        return attributes == null ? mFile.isFile() : attributes.file;
     }
 
     @Override
@@ -130,13 +183,15 @@ public class LocalDocumentFile extends DocumentFile
     @Override
     public long lastModified()
     {
-        return mFile.lastModified();
+        Attributes attributes = getAttributes();
+        return attributes == null ? mFile.lastModified() : attributes.lastModified;
     }
 
     @Override
     public long length()
     {
-        return mFile.length();
+        Attributes attributes = getAttributes();
+        return attributes == null ? mFile.length() : attributes.length;
     }
 
     @Override
@@ -154,34 +209,84 @@ public class LocalDocumentFile extends DocumentFile
     @Override
     public boolean delete()
     {
-        deleteContents(mFile);
-        return mFile.delete();
+        mAttributes = null;
+
+        try {
+            return new TreeDeleter(new StoppableImpl()).delete(mFile);
+        } catch (InterruptedException e) {
+            // nothing can stop the deleter that is created here
+            return false;
+        }
     }
 
     @Override
     public boolean exists()
     {
-        return mFile.exists();
+        Attributes attributes = getAttributes();
+        return attributes == null ? mFile.exists() : attributes.exists;
     }
 
     @Override
     public DocumentFile findFile(String displayName)
     {
-        File file = new File(mFile, displayName);
-        return file.exists() ? new LocalDocumentFile(this, file) : null;
+        LocalDocumentFile documentFile = new LocalDocumentFile(this, new File(mFile, displayName), mCacheAttributes);
+        return documentFile.exists() ? documentFile : null;
+    }
+
+    /**
+     * Read the directory entries as they are asked for. On API 26 and later, this uses a directory stream that
+     * doesn't read the whole directory first, and on the earlier versions, only the names are listed at once.
+     *
+     * @return the children of this directory
+     * @throws IOException if this is not a directory or cannot be read
+     */
+    @Override
+    public DocumentIterator iterate() throws IOException
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+            return new PathIterator(this);
+
+        String[] names = mFile.list();
+
+        if (names == null)
+            throw new IOException("Could not list the directory: " + mFile);
+
+        return new NameIterator(this, names);
     }
 
     @Override
     public DocumentFile[] listFiles()
     {
-        final List<DocumentFile> results = new ArrayList<DocumentFile>();
         final File[] files = mFile.listFiles();
 
-        if (files != null)
-            for (File file : files)
-                results.add(new LocalDocumentFile(this, file));
+        if (files == null)
+            return new DocumentFile[0];
 
-        return results.toArray(new DocumentFile[results.size()]);
+        final DocumentFile[] results = new DocumentFile[files.length];
+
+        for (int i = 0; i < files.length; i++)
+            results[i] = createChild(files[i]);
+
+        return results;
+    }
+
+    @Override
+    public FileChannel openReadChannel(Context context) throws IOException
+    {
+        return new FileInputStream(mFile).getChannel();
+    }
+
+    /**
+     * Look the names up with a single check each instead of listing the directory. This is cheaper unless a lot of
+     * names are looked up in a large directory, and it always sees the current state of the directory. The file
+     * system decides if the names that are only different in case are the same.
+     *
+     * @return the snapshot that checks the names as they are asked for
+     */
+    @Override
+    public DirectorySnapshot snapshot()
+    {
+        return new LocalSnapshot(this);
     }
 
     @Override
@@ -191,6 +296,7 @@ public class LocalDocumentFile extends DocumentFile
 
         if (mFile.renameTo(target)) {
             mFile = target;
+            mAttributes = null;
             return true;
         }
 
@@ -200,6 +306,17 @@ public class LocalDocumentFile extends DocumentFile
     @Override
     public void sync()
     {
+        mAttributes = null;
+    }
+
+    private LocalDocumentFile createChild(File file)
+    {
+        LocalDocumentFile documentFile = new LocalDocumentFile(this, file, mCacheAttributes);
+
+        if (mCacheAttributes)
+            documentFile.mAttributes = Attributes.read(file);
+
+        return documentFile;
     }
 
     private static String getTypeForName(String name)
@@ -217,22 +334,190 @@ public class LocalDocumentFile extends DocumentFile
         return "application/octet-stream";
     }
 
-    private static boolean deleteContents(File dir)
+    /**
+     * The attributes of a file as they were at the time they were read.
+     */
+    private static class Attributes
     {
-        File[] files = dir.listFiles();
-        boolean success = true;
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    success &= deleteContents(file);
-                }
-                if (!file.delete()) {
-                    Log.w(TAG, "Failed to delete " + file);
-                    success = false;
-                }
+        boolean exists;
+        boolean directory;
+        boolean file;
+        long length;
+        long lastModified;
+
+        static Attributes read(File file)
+        {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                Attributes attributes = BasicAttributesReader.read(file);
+
+                if (attributes != null)
+                    return attributes;
+            }
+
+            Attributes attributes = new Attributes();
+            attributes.directory = file.isDirectory();
+            attributes.file = !attributes.directory && file.isFile();
+            attributes.exists = attributes.directory || attributes.file || file.exists();
+
+            if (attributes.exists) {
+                attributes.length = file.length();
+                attributes.lastModified = file.lastModified();
             }
+
+            return attributes;
         }
+    }
 
-        return success;
+    /**
+     * Reads the attributes with a single call on API 26 and later. This is kept apart from {@link Attributes}, so
+     * that the classes that are loaded on the earlier versions don't refer to the NIO types.
+     */
+    @RequiresApi(26)
+    private static class BasicAttributesReader
+    {
+        /**
+         * @return the attributes, the ones of a missing file if it doesn't exist, or null if they couldn't be read
+         * and the {@link File} methods should be used instead
+         */
+        static Attributes read(File file)
+        {
+            try {
+                // java.io.File follows the symbolic links, so the attributes should be those of the target, too
+                BasicFileAttributes basicAttributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                Attributes attributes = new Attributes();
+                attributes.exists = true;
+                attributes.directory = basicAttributes.isDirectory();
+                attributes.file = basicAttributes.isRegularFile();
+                attributes.length = basicAttributes.size();
+                attributes.lastModified = basicAttributes.lastModifiedTime().toMillis();
+                return attributes;
+            } catch (NoSuchFileException e) {
+                return new Attributes();
+            } catch (IOException | SecurityException e) {
+                Log.d(TAG, "Could not read the attributes at once, falling back: " + file, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Checks the names on the file system as they are asked for, so there is nothing to keep up-to-date.
+     */
+    private static class LocalSnapshot extends DirectorySnapshot
+    {
+        private final LocalDocumentFile mLocalDirectory;
+
+        LocalSnapshot(LocalDocumentFile directory)
+        {
+            super(directory, new DocumentFile[0], false);
+            mLocalDirectory = directory;
+        }
+
+        @Override
+        public void add(DocumentFile file)
+        {
+        }
+
+        @Override
+        public boolean contains(String displayName)
+        {
+            return new File(mLocalDirectory.getFile(), displayName).exists();
+        }
+
+        @Override
+        public DocumentFile findFile(String displayName)
+        {
+            return mLocalDirectory.findFile(displayName);
+        }
+
+        @Override
+        public void remove(String displayName)
+        {
+        }
+
+        @Override
+        public int size()
+        {
+            String[] names = mLocalDirectory.getFile().list();
+            return names == null ? 0 : names.length;
+        }
+    }
+
+    private static class NameIterator implements DocumentIterator
+    {
+        private final LocalDocumentFile mParent;
+        private final String[] mNames;
+        private int mPosition = 0;
+
+        NameIterator(LocalDocumentFile parent, String[] names)
+        {
+            mParent = parent;
+            mNames = names;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return mPosition < mNames.length;
+        }
+
+        @Override
+        public LocalDocumentFile next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            return mParent.createChild(new File(mParent.mFile, mNames[mPosition++]));
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @RequiresApi(26)
+    private static class PathIterator implements DocumentIterator
+    {
+        private final LocalDocumentFile mParent;
+        private final DirectoryStream<Path> mStream;
+        private final Iterator<Path> mIterator;
+
+        PathIterator(LocalDocumentFile parent) throws IOException
+        {
+            mParent = parent;
+            mStream = Files.newDirectoryStream(parent.mFile.toPath());
+            mIterator = mStream.iterator();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            mStream.close();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return mIterator.hasNext();
+        }
+
+        @Override
+        public LocalDocumentFile next()
+        {
+            return mParent.createChild(mIterator.next().toFile());
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
     }
 }
@@ -18,10 +18,13 @@
 
 package com.genonbeta.android.framework.io;
 
+import android.content.Context;
 import android.net.Uri;
 import androidx.annotation.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 /**
  * created by: Veli
@@ -139,6 +142,12 @@ public class StreamDocumentFile extends DocumentFile
         return new DocumentFile[0];
     }
 
+    @Override
+    public FileChannel openReadChannel(Context context) throws IOException
+    {
+        return mStream.openReadChannel();
+    }
+
     @Override
     public boolean renameTo(String displayName)
     {
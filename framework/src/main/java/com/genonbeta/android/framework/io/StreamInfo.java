@@ -28,6 +28,8 @@ import com.genonbeta.android.framework.util.FileUtils;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * created by: Veli
@@ -129,6 +131,30 @@ public class StreamInfo
                 : new FileInputStream(file);
     }
 
+    /**
+     * @param offset of the region in the file
+     * @param length of the region which cannot be larger than {@link Integer#MAX_VALUE}
+     * @return the read-only buffer holding the region
+     * @throws IOException if the stream cannot be opened or mapped
+     * @see DocumentFile#map(Context, long, long)
+     */
+    public MappedByteBuffer map(long offset, long length) throws IOException
+    {
+        return DocumentFile.map(openReadChannel(), offset, length);
+    }
+
+    /**
+     * @return the channel that can read from any position of the stream and should be closed after it is used
+     * @throws IOException if the stream cannot be opened or is not a regular file, e.g., a pipe
+     * @see DocumentFile#openReadChannel(Context)
+     */
+    public FileChannel openReadChannel() throws IOException
+    {
+        return file == null
+                ? DocumentFile.openReadChannel(getContentResolver(), uri)
+                : new FileInputStream(file).getChannel();
+    }
+
     public enum Type
     {
         Stream,
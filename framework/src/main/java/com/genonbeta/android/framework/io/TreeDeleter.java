@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import android.os.Build;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import com.genonbeta.android.framework.util.FileUtils;
+import com.genonbeta.android.framework.util.Stoppable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes a directory with everything in it using a pool of threads. Each directory is a task that lists its
+ * children, deletes the files and hands the subdirectories to other tasks that idle threads can take over. The
+ * directories with a lot of files are split into batches, so that a single crowded directory, e.g., a cache, is also
+ * deleted in parallel. On the versions before API 21, the same walk is done on the calling thread.
+ * <p>
+ * The local files are deleted with {@link File#delete()} without creating a {@link DocumentFile} for each of them. For
+ * the other documents, e.g., a tree from the storage access framework, each child is deleted with a separate
+ * {@link DocumentFile#delete()} call, so the progress can be reported and the task can be stopped halfway, which
+ * isn't possible when the provider is asked to delete the whole tree at once.
+ * <p>
+ * The linked directories are deleted as links, leaving what they point to alone. {@link LocalDocumentFile#delete()}
+ * deletes with this class for the same reason.
+ *
+ * <pre>
+ *     TreeDeleter deleter = new TreeDeleter(stoppable);
+ *     deleter.setProgressListener(listener);
+ *     deleter.delete(cacheDirectory);
+ * </pre>
+ */
+public class TreeDeleter
+{
+    public static final String TAG = TreeDeleter.class.getSimpleName();
+
+    public static final long DEFAULT_PROGRESS_INTERVAL = 500;
+
+    /**
+     * The number of the children that a task goes over before the rest is split into another task.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private final Stoppable mStoppable;
+    private int mParallelism = Runtime.getRuntime().availableProcessors();
+    private long mProgressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private ProgressListener mProgressListener;
+
+    public TreeDeleter(Stoppable stoppable)
+    {
+        mStoppable = stoppable;
+    }
+
+    /**
+     * Delete the given file or directory with its contents. The files that cannot be deleted are skipped and counted
+     * as failed, which also leaves the directories holding them behind.
+     *
+     * @param file to be deleted
+     * @return true if everything was deleted
+     * @throws InterruptedException if the task was stopped before it could finish
+     */
+    public boolean delete(DocumentFile file) throws InterruptedException
+    {
+        if (file instanceof LocalDocumentFile)
+            return delete(new LocalWalker(), ((LocalDocumentFile) file).getFile());
+
+        return delete(new DocumentWalker(), file);
+    }
+
+    /**
+     * @param file to be deleted
+     * @return true if everything was deleted
+     * @throws InterruptedException if the task was stopped before it could finish
+     * @see #delete(DocumentFile)
+     */
+    public boolean delete(File file) throws InterruptedException
+    {
+        return delete(new LocalWalker(), file);
+    }
+
+    public int getParallelism()
+    {
+        return mParallelism;
+    }
+
+    public long getProgressInterval()
+    {
+        return mProgressInterval;
+    }
+
+    @Nullable
+    public ProgressListener getProgressListener()
+    {
+        return mProgressListener;
+    }
+
+    /**
+     * @param parallelism the number of the threads to delete with, 1 to delete on the calling thread
+     */
+    public void setParallelism(int parallelism)
+    {
+        mParallelism = parallelism;
+    }
+
+    /**
+     * @param interval the minimum time in milliseconds between two progress reports
+     */
+    public void setProgressInterval(long interval)
+    {
+        mProgressInterval = interval;
+    }
+
+    public void setProgressListener(@Nullable ProgressListener listener)
+    {
+        mProgressListener = listener;
+    }
+
+    private <T> boolean delete(Walker<T> walker, T file) throws InterruptedException
+    {
+        TaskState state = new TaskState(mProgressListener, mProgressInterval);
+        boolean deleted;
+
+        if (!walker.isDirectory(file))
+            deleted = walker.delete(file, state);
+        else if (Build.VERSION.SDK_INT >= 21 && mParallelism > 1)
+            deleted = deleteInParallel(walker, file, state);
+        else
+            deleted = deleteSequentially(walker, file, state);
+
+        if (mStoppable.isInterrupted())
+            throw new InterruptedException("The task was interrupted");
+
+        state.report(true);
+
+        return deleted;
+    }
+
+    @RequiresApi(21)
+    private <T> boolean deleteInParallel(Walker<T> walker, T directory, TaskState state)
+    {
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+
+        try {
+            return pool.invoke(new DirectoryTask<>(walker, directory, state));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private <T> boolean deleteSequentially(Walker<T> walker, T directory, TaskState state)
+    {
+        T[] children = walker.list(directory);
+        boolean success = true;
+
+        if (children != null)
+            for (T child : children) {
+                if (mStoppable.isInterrupted())
+                    return false;
+
+                if (walker.isDirectory(child))
+                    success &= deleteSequentially(walker, child, state);
+                else
+                    success &= walker.delete(child, state);
+            }
+
+        return success && walker.delete(directory, state);
+    }
+
+    /**
+     * Receives the number of the deleted and failed files at the interval given with
+     * {@link #setProgressInterval(long)} and once more when the task ends.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * Called on one of the threads that are deleting, so it should return quickly.
+         *
+         * @param deletedCount the number of the files and directories that are deleted so far
+         * @param failedCount  the number of the files and directories that couldn't be deleted
+         */
+        void onProgress(long deletedCount, long failedCount);
+    }
+
+    /**
+     * The state that is shared by the tasks of a single run.
+     */
+    private static class TaskState
+    {
+        final ProgressListener listener;
+        final long intervalNanos;
+        final AtomicLong deletedCount = new AtomicLong();
+        final AtomicLong failedCount = new AtomicLong();
+        final AtomicLong lastReportTime = new AtomicLong(System.nanoTime());
+
+        TaskState(ProgressListener listener, long interval)
+        {
+            this.listener = listener;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+        }
+
+        void onDeleted(boolean deleted)
+        {
+            (deleted ? deletedCount : failedCount).incrementAndGet();
+
+            if (listener != null)
+                report(false);
+        }
+
+        void report(boolean force)
+        {
+            if (listener == null)
+                return;
+
+            long lastTime = lastReportTime.get();
+            long time = System.nanoTime();
+
+            // only the thread that moves the time forward reports, so the listener is never called concurrently
+            if (force || (time - lastTime >= intervalNanos && lastReportTime.compareAndSet(lastTime, time)))
+                listener.onProgress(deletedCount.get(), failedCount.get());
+        }
+    }
+
+    /**
+     * The operations that are needed to walk a tree of some type of file.
+     */
+    private static abstract class Walker<T>
+    {
+        abstract boolean isDirectory(T file);
+
+        @Nullable
+        abstract T[] list(T directory);
+
+        boolean delete(T file, TaskState state)
+        {
+            boolean deleted = deleteFile(file);
+
+            if (!deleted)
+                Log.w(TAG, "Failed to delete " + file);
+
+            state.onDeleted(deleted);
+            return deleted;
+        }
+
+        abstract boolean deleteFile(T file);
+    }
+
+    private static class LocalWalker extends Walker<File>
+    {
+        @Override
+        boolean isDirectory(File file)
+        {
+            // the contents of a linked directory are not ours to delete, so it is deleted like a file
+            return file.isDirectory() && !FileUtils.isSymbolicLink(file);
+        }
+
+        @Override
+        File[] list(File directory)
+        {
+            return directory.listFiles();
+        }
+
+        @Override
+        boolean deleteFile(File file)
+        {
+            return file.delete();
+        }
+    }
+
+    private static class DocumentWalker extends Walker<DocumentFile>
+    {
+        @Override
+        boolean isDirectory(DocumentFile file)
+        {
+            return file.isDirectory();
+        }
+
+        @Override
+        DocumentFile[] list(DocumentFile directory)
+        {
+            return directory.listFiles();
+        }
+
+        @Override
+        boolean deleteFile(DocumentFile file)
+        {
+            return file.delete();
+        }
+    }
+
+    /**
+     * Deletes the contents of a directory and then the directory itself.
+     */
+    @RequiresApi(21)
+    private class DirectoryTask<T> extends RecursiveTask<Boolean>
+    {
+        private final Walker<T> mWalker;
+        private final T mDirectory;
+        private final TaskState mState;
+
+        DirectoryTask(Walker<T> walker, T directory, TaskState state)
+        {
+            mWalker = walker;
+            mDirectory = directory;
+            mState = state;
+        }
+
+        @Override
+        protected Boolean compute()
+        {
+            if (mStoppable.isInterrupted())
+                return false;
+
+            T[] children = mWalker.list(mDirectory);
+            boolean success = children == null || new BatchTask<>(mWalker, children, 0, children.length,
+                    mState).compute();
+
+            return success && !mStoppable.isInterrupted() && mWalker.delete(mDirectory, mState);
+        }
+    }
+
+    /**
+     * Deletes a range of the children of a directory, splitting it in half while it is larger than
+     * {@link #BATCH_SIZE}, so that the halves can be taken over by other threads.
+     */
+    @RequiresApi(21)
+    private class BatchTask<T> extends RecursiveTask<Boolean>
+    {
+        private final Walker<T> mWalker;
+        private final T[] mChildren;
+        private final int mStart;
+        private final int mEnd;
+        private final TaskState mState;
+
+        BatchTask(Walker<T> walker, T[] children, int start, int end, TaskState state)
+        {
+            mWalker = walker;
+            mChildren = children;
+            mStart = start;
+            mEnd = end;
+            mState = state;
+        }
+
+        @Override
+        protected Boolean compute()
+        {
+            if (mEnd - mStart > BATCH_SIZE) {
+                int middle = (mStart + mEnd) >>> 1;
+                BatchTask<T> second = new BatchTask<>(mWalker, mChildren, middle, mEnd, mState);
+
+                second.fork();
+
+                boolean success = new BatchTask<>(mWalker, mChildren, mStart, middle, mState).compute();
+                return second.join() && success;
+            }
+
+            List<DirectoryTask<T>> taskList = new ArrayList<>();
+            boolean success = true;
+
+            for (int i = mStart; i < mEnd; i++) {
+                if (mStoppable.isInterrupted())
+                    break;
+
+                T child = mChildren[i];
+
+                if (mWalker.isDirectory(child)) {
+                    DirectoryTask<T> task = new DirectoryTask<>(mWalker, child, mState);
+                    task.fork();
+                    taskList.add(task);
+                } else
+                    success &= mWalker.delete(child, mState);
+            }
+
+            for (DirectoryTask<T> task : taskList)
+                success &= task.join();
+
+            return success && !mStoppable.isInterrupted();
+        }
+    }
+}
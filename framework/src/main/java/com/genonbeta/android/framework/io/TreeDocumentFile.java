@@ -28,9 +28,15 @@ import android.os.Build;
 import android.provider.DocumentsContract;
 import android.text.TextUtils;
 import android.util.Log;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * created by: Veli
@@ -40,6 +46,18 @@ import java.io.FileNotFoundException;
 @RequiresApi(21)
 public class TreeDocumentFile extends DocumentFile
 {
+    /**
+     * The columns that are read from a document, so that the providers don't need to return all they have.
+     */
+    public static final String[] PROJECTION = new String[]{
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_SIZE,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_FLAGS,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+
     private Context mContext;
     private Uri mUri;
 
@@ -51,7 +69,12 @@ public class TreeDocumentFile extends DocumentFile
     private long mLastModified;
 
     private boolean mExists;
+    private String mKey;
 
+    /**
+     * Create the document for the given uri. The columns are read from {@link DocumentMetadataCache} when the
+     * document was queried recently, and from the provider otherwise.
+     */
     public TreeDocumentFile(DocumentFile parent, Context context, Uri uri, Uri original) throws Exception
     {
         super(parent, original);
@@ -59,29 +82,81 @@ public class TreeDocumentFile extends DocumentFile
         mContext = context;
         mUri = uri;
 
-        sync();
+        if (!resolve())
+            throw new Exception("Failed to sync()");
+    }
+
+    private TreeDocumentFile(Context context, Uri uri, Uri original)
+    {
+        super(null, original);
+
+        mContext = context;
+        mUri = uri;
     }
 
     public TreeDocumentFile(DocumentFile parent, Context context, Cursor cursor)
+    {
+        this(parent, context, cursor, Columns.from(cursor));
+    }
+
+    /**
+     * Create a child using the column indexes that were resolved once for the cursor it belongs to.
+     */
+    protected TreeDocumentFile(DocumentFile parent, Context context, Cursor cursor, Columns columns)
     {
         super(parent, null);
 
         mContext = context;
 
-        if (loadFrom(cursor))
+        if (loadFrom(cursor, columns))
             mUri = DocumentsContract.buildDocumentUriUsingTree(parent.getUri(), mId);
 
         setOriginalUri(mUri);
     }
 
+    /**
+     * Create a child using the columns that were cached when its parent was listed.
+     */
+    protected TreeDocumentFile(DocumentFile parent, Context context, DocumentMetadataCache.Entry entry)
+    {
+        super(parent, null);
+
+        mContext = context;
+        mKey = entry.key;
+
+        loadFrom(entry);
+
+        mUri = DocumentsContract.buildDocumentUriUsingTree(parent.getUri(), mId);
+        setOriginalUri(mUri);
+    }
+
+    /**
+     * The same as {@link #TreeDocumentFile(DocumentFile, Context, Uri, Uri)} for a document without a parent, but
+     * without throwing when the provider can't serve it, so that the caller can try another kind of document.
+     *
+     * @return the document or null if the provider couldn't serve it
+     */
+    @Nullable
+    static TreeDocumentFile from(Context context, Uri uri, Uri original)
+    {
+        TreeDocumentFile documentFile = new TreeDocumentFile(context, uri, original);
+        return documentFile.resolve() ? documentFile : null;
+    }
+
     @Override
     public DocumentFile createFile(String mimeType, String displayName)
     {
         try {
             Uri newFile = DocumentsContract.createDocument(mContext.getContentResolver(), mUri, mimeType, displayName);
 
-            if (newFile != null)
+            invalidateChildren();
+
+            if (newFile != null) {
+                // a document that had the same id before may still be cached with its old columns
+                getCache().invalidate(DocumentMetadataCache.createKey(newFile.getAuthority(),
+                        DocumentsContract.getDocumentId(newFile)));
                 return new TreeDocumentFile(this, mContext, newFile, newFile);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -151,32 +226,38 @@ public class TreeDocumentFile extends DocumentFile
 
     protected boolean loadFrom(Cursor cursor)
     {
-        if (cursor == null)
-            return false;
-
-        int idIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DOCUMENT_ID);
-        int nameIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DISPLAY_NAME);
-        int sizeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_SIZE);
-        int typeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_MIME_TYPE);
-        int flagIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_FLAGS);
-        int modifiedIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+        return cursor != null && loadFrom(cursor, Columns.from(cursor));
+    }
 
-        if (idIndex == -1 || nameIndex == -1 || sizeIndex == -1 || typeIndex == -1 || flagIndex == -1
-                || modifiedIndex == -1)
+    protected boolean loadFrom(Cursor cursor, Columns columns)
+    {
+        if (cursor == null || columns == null)
             return false;
 
-        mId = cursor.getString(idIndex);
-        mName = cursor.getString(nameIndex);
-        mLastModified = cursor.getLong(modifiedIndex);
-        mLength = cursor.getLong(sizeIndex);
-        mType = cursor.getString(typeIndex);
-        mFlags = cursor.getLong(flagIndex);
+        mId = cursor.getString(columns.id);
+        mName = cursor.getString(columns.name);
+        mLastModified = cursor.getLong(columns.lastModified);
+        mLength = cursor.getLong(columns.size);
+        mType = cursor.getString(columns.type);
+        mFlags = cursor.getLong(columns.flags);
 
         mExists = true;
 
         return true;
     }
 
+    protected void loadFrom(DocumentMetadataCache.Entry entry)
+    {
+        mId = entry.id;
+        mName = entry.name;
+        mLastModified = entry.lastModified;
+        mLength = entry.size;
+        mType = entry.type;
+        mFlags = entry.flags;
+
+        mExists = true;
+    }
+
     @Override
     public boolean canRead()
     {
@@ -198,6 +279,8 @@ public class TreeDocumentFile extends DocumentFile
             return DocumentsContract.deleteDocument(mContext.getContentResolver(), mUri);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
+        } finally {
+            invalidate();
         }
 
         return false;
@@ -212,35 +295,103 @@ public class TreeDocumentFile extends DocumentFile
     @Override
     public DocumentFile[] listFiles()
     {
-        try {
-            Uri treeUri = DocumentsContract.buildChildDocumentsUriUsingTree(mUri, DocumentsContract.getDocumentId(mUri));
-            Cursor cursor = mContext.getContentResolver().query(treeUri, null, null, null,
-                    null, null);
+        List<DocumentMetadataCache.Entry> entryList = getKey() == null ? null : getCache().getChildren(getKey());
 
-            if (cursor == null || !cursor.moveToFirst())
-                return new DocumentFile[0];
+        if (entryList != null) {
+            final DocumentFile[] resultFiles = new DocumentFile[entryList.size()];
 
-            final DocumentFile[] resultFiles = new DocumentFile[cursor.getCount()];
+            for (int i = 0; i < resultFiles.length; i++)
+                resultFiles[i] = new TreeDocumentFile(this, mContext, entryList.get(i));
 
-            do {
-                resultFiles[cursor.getPosition()] = new TreeDocumentFile(this, mContext, cursor);
-            } while (cursor.moveToNext());
+            return resultFiles;
+        }
 
-            closeQuietly(cursor);
+        ChildCursor children = null;
 
-            return resultFiles;
-        } catch (Exception e) {
+        try {
+            children = openChildren();
+
+            final DocumentFile[] resultFiles = new DocumentFile[children.getCount()];
+            int count = 0;
 
+            while (children.hasNext() && count < resultFiles.length)
+                resultFiles[count++] = children.next();
+
+            return count == resultFiles.length ? resultFiles : Arrays.copyOf(resultFiles, count);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to list files: " + e);
+        } finally {
+            closeQuietly(children);
         }
 
         return new DocumentFile[]{};
     }
 
+    /**
+     * Go over the children from the cached listing if there is a fresh one, or otherwise, from an open cursor.
+     *
+     * @return the children of this directory
+     * @throws FileNotFoundException if the provider fails to list the children
+     * @see #openChildren()
+     */
+    @Override
+    public DocumentIterator iterate() throws FileNotFoundException
+    {
+        List<DocumentMetadataCache.Entry> entryList = getKey() == null ? null : getCache().getChildren(getKey());
+        return entryList == null ? openChildren() : new EntryIterator(this, entryList);
+    }
+
+    /**
+     * Query the children of this directory and create them one by one as they are asked for. Unlike
+     * {@link #listFiles()}, this doesn't keep all the children in memory, so it can be used to go over large
+     * directories or to stop as soon as the needed child is found. It should be closed after it is used.
+     * <p>
+     * This always queries the provider, and when it is read to the end, the children are cached for
+     * {@link #listFiles()} and {@link #findFile(String)}.
+     *
+     * @return the children of this directory
+     * @throws FileNotFoundException if the provider fails to list the children
+     */
+    public ChildCursor openChildren() throws FileNotFoundException
+    {
+        Uri treeUri = DocumentsContract.buildChildDocumentsUriUsingTree(mUri, DocumentsContract.getDocumentId(mUri));
+        Cursor cursor = mContext.getContentResolver().query(treeUri, PROJECTION, null, null, null);
+
+        if (cursor == null)
+            throw new FileNotFoundException("The provider returned no children for " + mUri);
+
+        return new ChildCursor(this, cursor);
+    }
+
+    /**
+     * The snapshot ignores case when checking if a name is taken, because the shared storage that most of the tree
+     * providers serve doesn't tell the names that are only different in case apart. On a provider that does, this only
+     * means that such a name is avoided when looking for a unique one.
+     *
+     * @return the snapshot of the children
+     */
+    @Override
+    public DirectorySnapshot snapshot()
+    {
+        return new DirectorySnapshot(this, true);
+    }
+
     @Override
     public boolean renameTo(String displayName)
     {
         try {
-            return DocumentsContract.renameDocument(mContext.getContentResolver(), mUri, displayName) != null;
+            Uri renamedUri = DocumentsContract.renameDocument(mContext.getContentResolver(), mUri, displayName);
+
+            invalidate();
+
+            if (renamedUri != null) {
+                // the provider may give it a new id along with the new name
+                mUri = renamedUri;
+                mId = DocumentsContract.getDocumentId(renamedUri);
+                mKey = null;
+                mName = displayName;
+                return true;
+            }
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
@@ -250,6 +401,32 @@ public class TreeDocumentFile extends DocumentFile
 
     @Override
     public void sync() throws Exception
+    {
+        if (!query())
+            throw new Exception("Failed to sync()");
+    }
+
+    /**
+     * Read the columns from {@link DocumentMetadataCache} if the document was queried recently, or from the provider
+     * otherwise.
+     *
+     * @return true if the document exists
+     */
+    private boolean resolve()
+    {
+        DocumentMetadataCache.Entry entry = getKey() == null ? null : getCache().get(getKey());
+
+        if (entry == null)
+            return query();
+
+        loadFrom(entry);
+        return true;
+    }
+
+    /**
+     * @return true if the provider served the document
+     */
+    private boolean query()
     {
         mExists = false;
 
@@ -258,17 +435,238 @@ public class TreeDocumentFile extends DocumentFile
         Cursor cursor = null;
 
         try {
-            cursor = resolver.query(mUri, null, null, null, null);
+            cursor = resolver.query(mUri, PROJECTION, null, null, null);
 
-            if (cursor != null && cursor.moveToFirst() && loadFrom(cursor))
-                return;
+            if (cursor != null && cursor.moveToFirst() && loadFrom(cursor)) {
+                if (getKey() != null)
+                    getCache().put(createEntry(null));
+
+                return true;
+            }
         } catch (Exception e) {
             Log.w(TAG, "Failed query: " + e);
-            throw e;
         } finally {
             closeQuietly(cursor);
         }
 
-        throw new Exception("Failed to sync()");
+        return false;
+    }
+
+    private DocumentMetadataCache.Entry createEntry(@Nullable String parentKey)
+    {
+        return new DocumentMetadataCache.Entry(getKey(), parentKey, mId, mName, mLength, mType, mFlags,
+                mLastModified);
+    }
+
+    private static DocumentMetadataCache getCache()
+    {
+        return DocumentMetadataCache.getDefault();
+    }
+
+    /**
+     * @return the key of this document in {@link DocumentMetadataCache} or null if the uri doesn't point to a
+     * document
+     */
+    @Nullable
+    private String getKey()
+    {
+        if (mKey == null && mUri != null) {
+            try {
+                mKey = DocumentMetadataCache.createKey(mUri.getAuthority(), mId != null ? mId
+                        : DocumentsContract.getDocumentId(mUri));
+            } catch (IllegalArgumentException e) {
+                // e.g., a tree uri that isn't prepared to point to its root document
+            }
+        }
+
+        return mKey;
+    }
+
+    /**
+     * Forget the cached columns of this document and the listing of the directory it is in, e.g., after its content
+     * is written to, so that the next instances don't see the old length.
+     */
+    public void invalidate()
+    {
+        if (getKey() != null)
+            getCache().invalidate(getKey());
+
+        DocumentFile parent = getParentFile();
+
+        if (parent instanceof TreeDocumentFile)
+            ((TreeDocumentFile) parent).invalidateChildren();
+    }
+
+    private void invalidateChildren()
+    {
+        if (getKey() != null)
+            getCache().invalidateChildren(getKey());
+    }
+
+    /**
+     * The indexes of the {@link #PROJECTION} columns in a cursor, so that they are looked up once per cursor rather
+     * than once per row.
+     */
+    protected static class Columns
+    {
+        final int id;
+        final int name;
+        final int size;
+        final int type;
+        final int flags;
+        final int lastModified;
+
+        private Columns(int id, int name, int size, int type, int flags, int lastModified)
+        {
+            this.id = id;
+            this.name = name;
+            this.size = size;
+            this.type = type;
+            this.flags = flags;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return the indexes or null if any of the columns is missing
+         */
+        @Nullable
+        public static Columns from(Cursor cursor)
+        {
+            int idIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DOCUMENT_ID);
+            int nameIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DISPLAY_NAME);
+            int sizeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_SIZE);
+            int typeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_MIME_TYPE);
+            int flagIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_FLAGS);
+            int modifiedIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+
+            if (idIndex == -1 || nameIndex == -1 || sizeIndex == -1 || typeIndex == -1 || flagIndex == -1
+                    || modifiedIndex == -1)
+                return null;
+
+            return new Columns(idIndex, nameIndex, sizeIndex, typeIndex, flagIndex, modifiedIndex);
+        }
+    }
+
+    /**
+     * Goes over the children of a directory as the cursor advances.
+     *
+     * @see #openChildren()
+     */
+    public static class ChildCursor implements DocumentIterator
+    {
+        private final TreeDocumentFile mParent;
+        private final Cursor mCursor;
+        private final Columns mColumns;
+        private final List<DocumentMetadataCache.Entry> mEntryList;
+        private boolean mHasNext;
+        private boolean mIncomplete;
+
+        ChildCursor(TreeDocumentFile parent, Cursor cursor)
+        {
+            mParent = parent;
+            mCursor = cursor;
+            mColumns = Columns.from(cursor);
+            mHasNext = mColumns != null && cursor.moveToFirst();
+            mEntryList = parent.getKey() == null ? null : new ArrayList<DocumentMetadataCache.Entry>(
+                    mHasNext ? cursor.getCount() : 0);
+
+            if (!mHasNext && mColumns != null)
+                cacheChildren();
+        }
+
+        @Override
+        public void close()
+        {
+            mCursor.close();
+        }
+
+        /**
+         * @return the number of the children as the provider reported
+         */
+        public int getCount()
+        {
+            return mColumns == null ? 0 : mCursor.getCount();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return mHasNext;
+        }
+
+        @Override
+        public TreeDocumentFile next()
+        {
+            if (!mHasNext)
+                throw new NoSuchElementException();
+
+            TreeDocumentFile file = new TreeDocumentFile(mParent, mParent.mContext, mCursor, mColumns);
+            mHasNext = mCursor.moveToNext();
+
+            if (file.getKey() != null) {
+                if (mEntryList != null)
+                    mEntryList.add(file.createEntry(mParent.getKey()));
+            } else
+                mIncomplete = true;
+
+            if (!mHasNext)
+                cacheChildren();
+
+            return file;
+        }
+
+        /**
+         * Cache the listing only if every row made it into it, since a partial one would hide the rest of the
+         * children from {@link #listFiles()} and {@link #findFile(String)} until it expires.
+         */
+        private void cacheChildren()
+        {
+            if (mEntryList != null && !mIncomplete)
+                getCache().putChildren(mParent.getKey(), mEntryList);
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Goes over the children that were cached when the directory was last listed.
+     */
+    private static class EntryIterator implements DocumentIterator
+    {
+        private final TreeDocumentFile mParent;
+        private final Iterator<DocumentMetadataCache.Entry> mIterator;
+
+        EntryIterator(TreeDocumentFile parent, List<DocumentMetadataCache.Entry> entryList)
+        {
+            mParent = parent;
+            mIterator = entryList.iterator();
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return mIterator.hasNext();
+        }
+
+        @Override
+        public TreeDocumentFile next()
+        {
+            return new TreeDocumentFile(mParent, mParent.mContext, mIterator.next());
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.DocumentsContract;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tells what a uri points to by looking at its scheme, its path and its authority, so that the right
+ * {@link DocumentFile} can be created for it without trying the others first. The path is checked the same way
+ * {@link DocumentsContract#isTreeUri(Uri)} and {@link DocumentsContract#isDocumentUri(Context, Uri)} do, and
+ * whether the authority belongs to a documents provider is asked only once for each authority, so classifying a lot
+ * of uris from the same provider doesn't go to the package manager for each of them.
+ *
+ * @see DocumentFile#fromUris(Context, List, boolean)
+ */
+public class UriClassifier
+{
+    private static final String PATH_DOCUMENT = "document";
+    private static final String PATH_TREE = "tree";
+
+    private final Context mContext;
+    private final Map<String, Boolean> mDocumentsProviderMap = new HashMap<>();
+
+    public UriClassifier(Context context)
+    {
+        mContext = context;
+    }
+
+    /**
+     * @param uri to be classified
+     * @return the kind of the uri
+     */
+    public Kind classify(Uri uri)
+    {
+        String scheme = uri.getScheme();
+
+        if (ContentResolver.SCHEME_FILE.equals(scheme))
+            return Kind.File;
+
+        if (!ContentResolver.SCHEME_CONTENT.equals(scheme))
+            return Kind.Unknown;
+
+        // the documents are only represented with TreeDocumentFile which needs API 21
+        if (Build.VERSION.SDK_INT < 21)
+            return Kind.Content;
+
+        List<String> segments = uri.getPathSegments();
+        int size = segments.size();
+
+        if (size >= 2 && PATH_TREE.equals(segments.get(0))) {
+            if (size == 2)
+                return Kind.Tree;
+
+            if (size == 4 && PATH_DOCUMENT.equals(segments.get(2)) && isDocumentsProvider(uri))
+                return Kind.TreeDocument;
+        } else if (size == 2 && PATH_DOCUMENT.equals(segments.get(0)) && isDocumentsProvider(uri))
+            return Kind.Document;
+
+        return Kind.Content;
+    }
+
+    /**
+     * @param uri that has the path of a document
+     * @return true if the authority of the uri belongs to a documents provider
+     */
+    private boolean isDocumentsProvider(Uri uri)
+    {
+        String authority = uri.getAuthority();
+
+        synchronized (mDocumentsProviderMap) {
+            Boolean documentsProvider = mDocumentsProviderMap.get(authority);
+
+            if (documentsProvider == null) {
+                documentsProvider = DocumentsContract.isDocumentUri(mContext, uri);
+                mDocumentsProviderMap.put(authority, documentsProvider);
+            }
+
+            return documentsProvider;
+        }
+    }
+
+    public enum Kind
+    {
+        /**
+         * A local file.
+         */
+        File,
+        /**
+         * The root of a tree that was picked by the user, which should be prepared before it is used as a document.
+         */
+        Tree,
+        /**
+         * A document in a tree that was picked by the user.
+         */
+        TreeDocument,
+        /**
+         * A single document that was picked by the user.
+         */
+        Document,
+        /**
+         * The content of some other provider that can be read as a stream.
+         */
+        Content,
+        /**
+         * A uri whose scheme is not known, which can only be tried as a stream.
+         */
+        Unknown
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.object;
+
+import com.genonbeta.android.framework.util.actionperformer.EngineConnection;
+
+/**
+ * A {@link Selectable} that can be identified with an id that stays the same when the object representing it is
+ * recreated, e.g., when the list it is on is reloaded. {@link EngineConnection} matches these by their ids when the
+ * list is reloaded, so that the selection can be carried over to the new objects.
+ *
+ * @see EngineConnection#reconcileSelection()
+ */
+public interface StableSelectable extends Selectable
+{
+    /**
+     * @return the id that is unique among the items of the same list and doesn't change when this is recreated
+     */
+    long getSelectableId();
+}
@@ -5,15 +5,25 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 import android.webkit.MimeTypeMap;
 import androidx.core.content.FileProvider;
 import com.genonbeta.android.framework.io.*;
+import com.genonbeta.android.framework.util.copy.CopyDigest;
+import com.genonbeta.android.framework.util.copy.CopyOptions;
+import com.genonbeta.android.framework.util.copy.CopyResult;
+import com.genonbeta.android.framework.util.copy.PipelinedCopier;
+import com.genonbeta.android.framework.util.copy.ProgressTracker;
 
 import java.io.*;
 import java.net.FileNameMap;
 import java.net.URI;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Locale;
 
 /**
@@ -24,35 +34,147 @@ public class FileUtils
 {
     public static final String TAG = FileUtils.class.getSimpleName();
 
+    /**
+     * The largest number of bytes that is transferred between two channels before checking if the task is stopped.
+     */
+    public static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
     public static void copy(Context context, DocumentFile source, DocumentFile destination, Stoppable stoppable,
                             int bufferLength, int socketTimeout) throws Exception
+    {
+        copy(context, source, destination, stoppable, bufferLength, socketTimeout, 1);
+    }
+
+    /**
+     * Copy a file to another. When both of them are regular files, the bytes are transferred by the kernel. Otherwise,
+     * they are copied through streams and if the depth is larger than 1, the reads and writes are made on separate
+     * threads with {@link PipelinedCopier}, which helps when one of the sides, e.g., a provider, is slow.
+     *
+     * @param depth the number of buffers that the reader can fill before the writer catches up
+     * @see PipelinedCopier#DEFAULT_DEPTH
+     */
+    public static void copy(Context context, DocumentFile source, DocumentFile destination, Stoppable stoppable,
+                            int bufferLength, int socketTimeout, int depth) throws Exception
+    {
+        CopyOptions options = new CopyOptions();
+        options.setDepth(depth);
+
+        copy(context, source, destination, stoppable, bufferLength, socketTimeout, options);
+    }
+
+    /**
+     * The same as {@link #copy(Context, DocumentFile, DocumentFile, Stoppable, int, int, int)} with the settings given
+     * with the options, e.g., to report the progress.
+     *
+     * @param options for the copy
+     * @return the length of the destination and the digest if it was asked for
+     * @see CopyOptions
+     */
+    public static CopyResult copy(Context context, DocumentFile source, DocumentFile destination, Stoppable stoppable,
+                                  int bufferLength, int socketTimeout, CopyOptions options) throws Exception
     {
         ContentResolver resolver = context.getContentResolver();
+        ProgressTracker tracker = ProgressTracker.from(options, source.length());
+        CopyDigest digest = options.getDigestAlgorithm() == null ? null
+                : CopyDigest.getInstance(options.getDigestAlgorithm());
+        long position = options.isResumable() ? getResumePosition(resolver, source, destination,
+                options.getVerifyWindow()) : 0;
+        boolean append = position > 0;
+        long length;
+
+        if (tracker != null)
+            tracker.onSkipped(position);
 
-        InputStream inputStream = resolver.openInputStream(source.getUri());
-        OutputStream outputStream = resolver.openOutputStream(destination.getUri());
+        FileInputStream fileInputStream = openFileInputStream(resolver, source);
+        InputStream inputStream = fileInputStream;
+        OutputStream outputStream = null;
 
-        if (inputStream == null || outputStream == null)
-            throw new IOException("Failed to open streams to start copying");
+        try {
+            // the destination is opened only once, because opening it with "w" truncates it
+            File localDestination = getLocalFile(destination);
+            ParcelFileDescriptor outputDescriptor = null;
+
+            if (localDestination != null)
+                outputStream = new FileOutputStream(localDestination, append);
+            else if ((outputDescriptor = openFileDescriptor(resolver, destination.getUri(),
+                    append ? "wa" : "w")) != null)
+                outputStream = new ParcelFileDescriptor.AutoCloseOutputStream(outputDescriptor);
+
+            // a pipe doesn't have a size, so the kernel can only transfer between regular files
+            if (fileInputStream != null && outputStream != null
+                    && (outputDescriptor == null || outputDescriptor.getStatSize() >= 0)) {
+                if (digest != null && append)
+                    readFully(fileInputStream, position, digest);
+
+                length = transfer(fileInputStream.getChannel(), ((FileOutputStream) outputStream).getChannel(),
+                        position, stoppable, bufferLength, socketTimeout, tracker, digest);
+
+                // a failed write may only surface when closing, so it shouldn't be ignored when succeeding
+                outputStream.close();
+                outputStream = null;
+                finish(tracker);
+
+                return createResult(length, position, digest);
+            }
+
+            if (inputStream == null)
+                inputStream = resolver.openInputStream(source.getUri());
+
+            if (outputStream == null)
+                outputStream = append ? resolver.openOutputStream(destination.getUri(), "wa")
+                        : resolver.openOutputStream(destination.getUri());
+
+            if (inputStream == null || outputStream == null)
+                throw new IOException("Failed to open streams to start copying");
 
-        byte[] buffer = new byte[bufferLength];
-        int len = 0;
-        long lastRead = System.currentTimeMillis();
+            if (digest == null)
+                skip(inputStream, position);
+            else
+                readFully(inputStream, position, digest);
 
-        while (len != -1) {
-            if ((len = inputStream.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, len);
-                outputStream.flush();
+            if (options.getDepth() > 1) {
+                length = position + PipelinedCopier.copy(inputStream, outputStream, stoppable, bufferLength,
+                        options.getDepth(), socketTimeout, tracker, digest);
+            } else {
+                byte[] buffer = new byte[bufferLength];
+                int len = 0;
+                long lastRead = System.currentTimeMillis();
 
-                lastRead = System.currentTimeMillis();
+                length = position;
+
+                while (len != -1) {
+                    if ((len = inputStream.read(buffer)) > 0) {
+                        outputStream.write(buffer, 0, len);
+                        lastRead = System.currentTimeMillis();
+                        length += len;
+
+                        if (digest != null)
+                            digest.update(buffer, 0, len);
+
+                        if (tracker != null)
+                            tracker.onTransferred(len);
+                    }
+
+                    if ((System.currentTimeMillis() - lastRead) > socketTimeout || stoppable.isInterrupted())
+                        throw new Exception("Timed out or interrupted. Exiting!");
+                }
             }
 
-            if ((System.currentTimeMillis() - lastRead) > socketTimeout || stoppable.isInterrupted())
-                throw new Exception("Timed out or interrupted. Exiting!");
-        }
+            outputStream.flush();
+            outputStream.close();
+            outputStream = null;
+            finish(tracker);
+
+            return createResult(length, position, digest);
+        } finally {
+            // only left open when the copy has failed
+            closeQuietly(outputStream);
+            closeQuietly(inputStream);
 
-        outputStream.close();
-        inputStream.close();
+            // the cached length is wrong even if the copy has failed halfway
+            if (destination instanceof TreeDocumentFile)
+                ((TreeDocumentFile) destination).invalidate();
+        }
     }
 
     public static DocumentFile fetchDirectories(DocumentFile directoryFile, String path) throws IOException
@@ -70,16 +192,44 @@ public class FileUtils
             if (currentDirectory == null)
                 throw new IOException("Failed to create directories: " + path);
 
-            DocumentFile existingOne = currentDirectory.findFile(currentPath);
+            currentDirectory = fetchDirectory(currentDirectory.snapshot(), currentPath, createIfNotExists);
+        }
+
+        return currentDirectory;
+    }
 
-            if (existingOne != null && !existingOne.isDirectory())
-                throw new IOException("A file exists for of directory name: " + currentPath + " ; " + path);
+    /**
+     * Find or create a directory directly in the directory of the snapshot. The snapshot is updated when the directory
+     * is created, so that it can be used for the other children of the same directory without listing it again.
+     *
+     * @param snapshot         of the directory to look in
+     * @param displayName      of the directory
+     * @param createIfNotExists true to create the directory when it doesn't exist
+     * @return the directory or null if it doesn't exist and shouldn't be created
+     * @throws IOException if a file has the name or the directory cannot be created
+     */
+    public static DocumentFile fetchDirectory(DirectorySnapshot snapshot, String displayName,
+                                              boolean createIfNotExists) throws IOException
+    {
+        DocumentFile existingOne = snapshot.findFile(displayName);
 
-            currentDirectory = existingOne == null && createIfNotExists ? currentDirectory.createDirectory(currentPath)
-                    : existingOne;
+        if (existingOne != null) {
+            if (!existingOne.isDirectory())
+                throw new IOException("A file exists for of directory name: " + displayName);
+
+            return existingOne;
         }
 
-        return currentDirectory;
+        if (!createIfNotExists)
+            return null;
+
+        DocumentFile createdDirectory = snapshot.getDirectory().createDirectory(displayName);
+
+        if (createdDirectory == null)
+            throw new IOException("Failed to create directory: " + displayName);
+
+        snapshot.add(createdDirectory);
+        return createdDirectory;
     }
 
     public static DocumentFile fetchFile(DocumentFile directoryFile, String path, String displayName) throws IOException
@@ -93,25 +243,46 @@ public class FileUtils
         DocumentFile documentFile = path == null ? directoryFile : fetchDirectories(directoryFile, path,
                 createIfNotExists);
 
-        if (documentFile != null) {
-            DocumentFile existingOne = documentFile.findFile(displayName);
+        DocumentFile file = documentFile == null ? null : fetchFile(documentFile.snapshot(), displayName,
+                createIfNotExists);
 
-            if (existingOne != null) {
-                if (!existingOne.isFile())
-                    throw new IOException("A directory exists for of file name");
+        if (file == null)
+            throw new IOException("Failed to create file: " + path);
 
-                return existingOne;
-            }
+        return file;
+    }
 
-            if (createIfNotExists) {
-                DocumentFile createdFile = documentFile.createFile(null, displayName);
+    /**
+     * The counterpart of {@link #fetchDirectory(DirectorySnapshot, String, boolean)} for files.
+     *
+     * @param snapshot         of the directory to look in
+     * @param displayName      of the file
+     * @param createIfNotExists true to create the file when it doesn't exist
+     * @return the file or null if it doesn't exist and shouldn't be created
+     * @throws IOException if a directory has the name or the file cannot be created
+     */
+    public static DocumentFile fetchFile(DirectorySnapshot snapshot, String displayName, boolean createIfNotExists)
+            throws IOException
+    {
+        DocumentFile existingOne = snapshot.findFile(displayName);
 
-                if (createdFile != null)
-                    return createdFile;
-            }
+        if (existingOne != null) {
+            if (!existingOne.isFile())
+                throw new IOException("A directory exists for of file name: " + displayName);
+
+            return existingOne;
         }
 
-        throw new IOException("Failed to create file: " + path);
+        if (!createIfNotExists)
+            return null;
+
+        DocumentFile createdFile = snapshot.getDirectory().createFile(null, displayName);
+
+        if (createdFile == null)
+            throw new IOException("Failed to create file: " + displayName);
+
+        snapshot.add(createdFile);
+        return createdFile;
     }
 
     public static DocumentFile fromUri(Context context, Uri uri) throws FileNotFoundException
@@ -212,7 +383,23 @@ public class FileUtils
 
     public static String getUniqueFileName(DocumentFile documentFolder, String fileName, boolean tryActualFile)
     {
-        if (tryActualFile && documentFolder.findFile(fileName) == null)
+        return getUniqueFileName(documentFolder.snapshot(), fileName, tryActualFile);
+    }
+
+    /**
+     * Find a name that is not taken in the directory by adding a number to the given name, e.g., "file (1).txt".
+     * The names are looked up in the snapshot, so the directory is listed at most once however many names are tried.
+     * The snapshots of the local directories don't list at all and check each name on the file system instead, and the
+     * ones of the tree documents treat the names that are only different in case as taken.
+     *
+     * @param snapshot      of the directory
+     * @param fileName      that is wanted
+     * @param tryActualFile true to return the given name when it is not taken
+     * @return the name that is not taken or the given name if all the tried names are taken
+     */
+    public static String getUniqueFileName(DirectorySnapshot snapshot, String fileName, boolean tryActualFile)
+    {
+        if (tryActualFile && !snapshot.contains(fileName))
             return fileName;
 
         int pathStartPosition = fileName.lastIndexOf(".");
@@ -228,24 +415,85 @@ public class FileUtils
         for (int exceed = 1; exceed < 999; exceed++) {
             String newName = mergedName + " (" + exceed + ")" + fileExtension;
 
-            if (documentFolder.findFile(newName) == null)
+            if (!snapshot.contains(newName))
                 return newName;
         }
 
         return fileName;
     }
 
+    /**
+     * Check if the file is a symbolic link by comparing the canonical path of its parent with the parent of its own
+     * canonical path, which works on all the versions unlike the NIO file attributes. The walks over a tree use it to
+     * leave a linked directory alone, since its contents belong to another tree, e.g., {@link TreeDeleter}.
+     *
+     * @param file to check
+     * @return true if it is a link, false if it isn't or its paths couldn't be resolved
+     */
+    public static boolean isSymbolicLink(File file)
+    {
+        File parent = file.getParentFile();
+
+        if (parent == null)
+            return false;
+
+        try {
+            return !parent.getCanonicalFile().equals(file.getCanonicalFile().getParentFile());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     public static boolean move(Context context, DocumentFile targetFile, DocumentFile destinationFile,
                                Stoppable stoppable, int bufferLength, int socketTimeout) throws Exception
     {
-        if (!(targetFile instanceof LocalDocumentFile) || !(destinationFile instanceof LocalDocumentFile)
-                || !((LocalDocumentFile) targetFile).getFile().renameTo(((LocalDocumentFile) destinationFile).getFile()))
-            copy(context, targetFile, destinationFile, stoppable, bufferLength, socketTimeout);
+        return move(context, targetFile, destinationFile, stoppable, bufferLength, socketTimeout, new CopyOptions());
+    }
+
+    /**
+     * Move a file by renaming it when both of them are local files or by copying and then deleting it otherwise. When
+     * it is renamed, the progress is reported only once as finished. When it is copied and
+     * {@link CopyOptions#isVerifyAfterMove()} is set, the copy is read back and the source is kept if its digest
+     * doesn't match.
+     *
+     * @param options for the copy if it is needed
+     * @return true when the destination has the same length with the source (and the same digest if it is verified),
+     * and the source is deleted
+     * @see #copy(Context, DocumentFile, DocumentFile, Stoppable, int, int, CopyOptions)
+     */
+    public static boolean move(Context context, DocumentFile targetFile, DocumentFile destinationFile,
+                               Stoppable stoppable, int bufferLength, int socketTimeout, CopyOptions options)
+            throws Exception
+    {
+        long length = targetFile.length();
+        boolean renamed = targetFile instanceof LocalDocumentFile && destinationFile instanceof LocalDocumentFile
+                && ((LocalDocumentFile) targetFile).getFile().renameTo(((LocalDocumentFile) destinationFile).getFile());
+
+        if (!renamed) {
+            if (options.isVerifyAfterMove() && options.getDigestAlgorithm() == null) {
+                options = new CopyOptions(options);
+                options.setDigestAlgorithm(CopyDigest.CRC32C);
+            }
+
+            CopyResult result = copy(context, targetFile, destinationFile, stoppable, bufferLength, socketTimeout,
+                    options);
+
+            if (options.isVerifyAfterMove() && !Arrays.equals(result.getDigest(), computeDigest(
+                    context.getContentResolver(), destinationFile, result.getDigestAlgorithm()))) {
+                Log.d(TAG, "The copy of " + targetFile.getName() + " doesn't match the original, keeping it");
+                return false;
+            }
+        } else if (options.getProgressListener() != null) {
+            ProgressTracker tracker = ProgressTracker.from(options, length);
+            tracker.onTransferred(length);
+            tracker.finish();
+        }
 
         // syncs the file with latest data if it is database based
         destinationFile.sync();
 
-        if (targetFile.length() == destinationFile.length()) {
+        // the target is gone if it was renamed, so the length from before is used
+        if (length == destinationFile.length()) {
             targetFile.delete();
             return true;
         }
@@ -287,4 +535,261 @@ public class FileUtils
 
         return String.format(Locale.getDefault(), "%.1f %sB", bytes / Math.pow(unit, expression), prefix);
     }
+
+    /**
+     * Open a stream whose channel can be used with {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+     * The local files are opened directly and the content uris are opened through their file descriptors.
+     *
+     * @param resolver to open the content uris with
+     * @param file     to be read
+     * @return the stream or null if the file is not backed by a regular file, e.g., it is a pipe
+     * @throws IOException if the local file cannot be opened
+     */
+    private static FileInputStream openFileInputStream(ContentResolver resolver, DocumentFile file)
+            throws IOException
+    {
+        File localFile = getLocalFile(file);
+
+        if (localFile != null)
+            return new FileInputStream(localFile);
+
+        ParcelFileDescriptor descriptor = openFileDescriptor(resolver, file.getUri(), "r");
+
+        if (descriptor != null && descriptor.getStatSize() < 0) {
+            // not a regular file, e.g., a pipe, so it doesn't have a size to transfer
+            descriptor.close();
+            return null;
+        }
+
+        return descriptor == null ? null : new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+    }
+
+    private static ParcelFileDescriptor openFileDescriptor(ContentResolver resolver, Uri uri, String mode)
+    {
+        try {
+            return resolver.openFileDescriptor(uri, mode);
+        } catch (FileNotFoundException | RuntimeException e) {
+            // the provider may only serve streams, e.g., the assets, or refuse the mode, so we will fall back to them
+            Log.d(TAG, "openFileDescriptor: " + uri + " cannot be opened with a descriptor", e);
+            return null;
+        }
+    }
+
+    /**
+     * Read a file from the start to compute its digest.
+     */
+    private static byte[] computeDigest(ContentResolver resolver, DocumentFile file, String algorithm)
+            throws Exception
+    {
+        File localFile = getLocalFile(file);
+        InputStream inputStream = localFile == null ? resolver.openInputStream(file.getUri())
+                : new FileInputStream(localFile);
+
+        if (inputStream == null)
+            throw new IOException("Failed to open " + file.getName() + " to verify");
+
+        try {
+            CopyDigest digest = CopyDigest.getInstance(algorithm);
+            readFully(inputStream, Long.MAX_VALUE, digest);
+            return digest.digest();
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    private static CopyResult createResult(long length, long skippedBytes, CopyDigest digest)
+    {
+        return digest == null ? new CopyResult(length, skippedBytes, null, null)
+                : new CopyResult(length, skippedBytes, digest.getAlgorithm(), digest.digest());
+    }
+
+    private static void finish(ProgressTracker tracker)
+    {
+        if (tracker != null)
+            tracker.finish();
+    }
+
+    /**
+     * Find where a resumed copy should continue from.
+     *
+     * @return the size of the destination, or 0 if it should start over
+     */
+    private static long getResumePosition(ContentResolver resolver, DocumentFile source, DocumentFile destination,
+                                          int verifyWindow) throws Exception
+    {
+        // the tree documents keep the length from the last time they were queried
+        destination.sync();
+
+        long existing = destination.length();
+        long total = source.length();
+
+        if (existing <= 0 || total < 0 || existing > total)
+            return 0;
+
+        if (verifyWindow > 0) {
+            int window = (int) Math.min(verifyWindow, existing);
+            byte[] sourceTail = readRange(resolver, source, existing - window, window);
+            byte[] destinationTail = readRange(resolver, destination, existing - window, window);
+
+            if (!Arrays.equals(sourceTail, destinationTail)) {
+                Log.d(TAG, "The existing part of " + destination.getName() + " doesn't match, starting over");
+                return 0;
+            }
+        }
+
+        return existing;
+    }
+
+    private static File getLocalFile(DocumentFile file)
+    {
+        if (file instanceof LocalDocumentFile)
+            return ((LocalDocumentFile) file).getFile();
+        else if (file instanceof StreamDocumentFile)
+            return ((StreamDocumentFile) file).getFile();
+
+        return null;
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.d(TAG, "Failed to close the stream: " + e.getMessage());
+            }
+        }
+    }
+
+    private static byte[] readRange(ContentResolver resolver, DocumentFile file, long offset, int length)
+            throws IOException
+    {
+        File localFile = getLocalFile(file);
+        InputStream inputStream = localFile == null ? resolver.openInputStream(file.getUri())
+                : new FileInputStream(localFile);
+
+        if (inputStream == null)
+            throw new IOException("Failed to open " + file.getName() + " to compare");
+
+        try {
+            byte[] bytes = new byte[length];
+            int read = 0;
+            int len;
+
+            skip(inputStream, offset);
+
+            while (read < length && (len = inputStream.read(bytes, read, length - read)) != -1)
+                read += len;
+
+            return read == length ? bytes : Arrays.copyOf(bytes, read);
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Read the given number of bytes, or until the end, into the digest.
+     */
+    private static void readFully(InputStream inputStream, long bytes, CopyDigest digest) throws IOException
+    {
+        byte[] buffer = new byte[8192];
+        long left = bytes;
+        int len;
+
+        while (left > 0 && (len = inputStream.read(buffer, 0, (int) Math.min(buffer.length, left))) != -1) {
+            digest.update(buffer, 0, len);
+            left -= len;
+        }
+
+        if (left > 0 && bytes != Long.MAX_VALUE)
+            throw new EOFException("The stream ended before reading " + bytes + " bytes");
+    }
+
+    /**
+     * Skip the given number of bytes, by seeking if the stream belongs to a file.
+     */
+    private static void skip(InputStream inputStream, long bytes) throws IOException
+    {
+        if (bytes <= 0)
+            return;
+
+        if (inputStream instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) inputStream).getChannel();
+
+            try {
+                channel.position(channel.position() + bytes);
+                return;
+            } catch (IOException e) {
+                // not seekable, e.g., a pipe, so skip it by reading
+            }
+        }
+
+        long left = bytes;
+
+        while (left > 0) {
+            long skipped = inputStream.skip(left);
+
+            if (skipped <= 0) {
+                if (inputStream.read() == -1)
+                    throw new EOFException("The stream ended before skipping " + bytes + " bytes");
+
+                skipped = 1;
+            }
+
+            left -= skipped;
+        }
+    }
+
+    /**
+     * Move the bytes in chunks so that the kernel can copy them without bringing them to the user space and so that
+     * the task can be interrupted between the chunks. When there is a digest to compute, the bytes are read into a
+     * buffer instead, so that they can be seen. The destination is truncated afterwards because not all the providers
+     * truncate the file when they are opened with the "w" mode.
+     *
+     * @param position where to start reading the source, which is also the size of the destination
+     * @return the size of the destination after the copy
+     */
+    private static long transfer(FileChannel source, FileChannel destination, long position, Stoppable stoppable,
+                                 int bufferLength, int socketTimeout, ProgressTracker tracker, CopyDigest digest)
+            throws Exception
+    {
+        long size = source.size();
+        long lastTransfer = System.currentTimeMillis();
+        ByteBuffer buffer = digest == null ? null : ByteBuffer.allocateDirect(bufferLength);
+
+        while (position < size) {
+            long transferred;
+
+            if (buffer == null)
+                transferred = source.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position),
+                        destination);
+            else {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), size - position));
+
+                if ((transferred = source.read(buffer, position)) == -1)
+                    throw new EOFException("The source ended before " + size + " bytes could be read");
+
+                buffer.flip();
+                digest.update(buffer);
+
+                while (buffer.hasRemaining())
+                    destination.write(buffer);
+            }
+
+            if (transferred > 0) {
+                position += transferred;
+                lastTransfer = System.currentTimeMillis();
+
+                if (tracker != null)
+                    tracker.onTransferred(transferred);
+            }
+
+            if ((System.currentTimeMillis() - lastTransfer) > socketTimeout || stoppable.isInterrupted())
+                throw new Exception("Timed out or interrupted. Exiting!");
+        }
+
+        destination.truncate(position);
+        return position;
+    }
 }
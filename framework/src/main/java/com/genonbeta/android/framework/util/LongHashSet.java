@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash set for primitive long values that doesn't box them. It uses open addressing with linear probing, so each
+ * value takes only one slot of a long array.
+ */
+public class LongHashSet
+{
+    private static final int MIN_CAPACITY = 8;
+    private static final long EMPTY = 0;
+
+    private long[] mSlots;
+    private boolean mHasEmptyValue;
+    private int mSize;
+
+    public LongHashSet()
+    {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of values that is expected to be held without needing to grow
+     */
+    public LongHashSet(int expectedSize)
+    {
+        mSlots = new long[capacityFor(expectedSize)];
+    }
+
+    /**
+     * @param value to be added
+     * @return true if the value was not in the set
+     */
+    public boolean add(long value)
+    {
+        if (value == EMPTY) {
+            if (mHasEmptyValue)
+                return false;
+
+            mHasEmptyValue = true;
+            mSize++;
+            return true;
+        }
+
+        int index = indexOf(mSlots, value);
+
+        if (mSlots[index] == value)
+            return false;
+
+        mSlots[index] = value;
+        mSize++;
+
+        if (mSize > mSlots.length / 2)
+            rehash(mSlots.length * 2);
+
+        return true;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(mSlots, EMPTY);
+        mHasEmptyValue = false;
+        mSize = 0;
+    }
+
+    public boolean contains(long value)
+    {
+        return value == EMPTY ? mHasEmptyValue : mSlots[indexOf(mSlots, value)] == value;
+    }
+
+    public boolean isEmpty()
+    {
+        return mSize == 0;
+    }
+
+    /**
+     * @param value to be removed
+     * @return true if the value was in the set
+     */
+    public boolean remove(long value)
+    {
+        if (value == EMPTY) {
+            if (!mHasEmptyValue)
+                return false;
+
+            mHasEmptyValue = false;
+            mSize--;
+            return true;
+        }
+
+        int mask = mSlots.length - 1;
+        int index = indexOf(mSlots, value);
+
+        if (mSlots[index] != value)
+            return false;
+
+        mSlots[index] = EMPTY;
+        mSize--;
+
+        // move the values that were pushed further by the removed value back, so that the lookups don't stop early
+        for (int next = (index + 1) & mask; mSlots[next] != EMPTY; next = (next + 1) & mask) {
+            int ideal = hash(mSlots[next]) & mask;
+
+            if (((next - ideal) & mask) >= ((next - index) & mask)) {
+                mSlots[index] = mSlots[next];
+                mSlots[next] = EMPTY;
+                index = next;
+            }
+        }
+
+        return true;
+    }
+
+    public int size()
+    {
+        return mSize;
+    }
+
+    /**
+     * @return the values in no particular order
+     */
+    public long[] toArray()
+    {
+        long[] values = new long[mSize];
+        int index = 0;
+
+        if (mHasEmptyValue)
+            values[index++] = EMPTY;
+
+        for (long slot : mSlots)
+            if (slot != EMPTY)
+                values[index++] = slot;
+
+        return values;
+    }
+
+    private void rehash(int capacity)
+    {
+        long[] slots = new long[capacity];
+
+        for (long slot : mSlots)
+            if (slot != EMPTY)
+                slots[indexOf(slots, slot)] = slot;
+
+        mSlots = slots;
+    }
+
+    private static int capacityFor(int expectedSize)
+    {
+        int capacity = MIN_CAPACITY;
+
+        while (capacity < expectedSize * 2)
+            capacity <<= 1;
+
+        return capacity;
+    }
+
+    private static int hash(long value)
+    {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @return the slot holding the value or the empty slot where it should be placed
+     */
+    private static int indexOf(long[] slots, long value)
+    {
+        int mask = slots.length - 1;
+        int index = hash(value) & mask;
+
+        while (slots[index] != EMPTY && slots[index] != value)
+            index = (index + 1) & mask;
+
+        return index;
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import com.genonbeta.android.framework.object.Selectable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A {@link PerformerEngine} that can run the selection calls of its connections on a background executor. This is
+ * useful when {@link PerformerCallback#onSelection} does real work, like checking the permissions of a file, which
+ * would otherwise block the thread that the selection is made on.
+ * <p>
+ * The tasks that are submitted for the same connection are run one after another in the order they are submitted,
+ * while the tasks of different connections can run in parallel. The {@link PerformerListener} instances are always
+ * informed on the main thread, so they can update the UI directly. However, the
+ * {@link IEngineConnection.SelectionListener} instances are still invoked by the connection on the thread that makes
+ * the change, so they shouldn't touch the UI when the change is made with one of the "async" methods.
+ * <p>
+ * The calls made on the main thread without using this class still work as they do with {@link PerformerEngine}.
+ * However, the connections are not thread-safe, so a connection that has tasks waiting or running on the executor
+ * should only be changed through {@link #submit(IBaseEngineConnection, Callable)} and the "async" methods until they
+ * are done. A selection call that is made on another thread in the meantime is queued behind those tasks when it
+ * reaches {@link #check}, and returns false because the change is not applied yet. The calls that don't go through
+ * {@link #check}, like {@link EngineConnection#reconcileSelection()}, are not queued, so they should be submitted.
+ */
+public class AsyncPerformerEngine extends PerformerEngine
+{
+    private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Map<IBaseEngineConnection, SerialExecutor> mSerialExecutorMap = new WeakHashMap<>();
+
+    /**
+     * Create an instance that runs the tasks on {@link AsyncTask#THREAD_POOL_EXECUTOR}.
+     */
+    public AsyncPerformerEngine()
+    {
+        this(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * @param executor to run the tasks on
+     */
+    public AsyncPerformerEngine(@NonNull Executor executor)
+    {
+        mExecutor = executor;
+    }
+
+    @Override
+    public <T extends Selectable> boolean check(IEngineConnection<T> engineConnection, T selectable, boolean isSelected,
+                                                int position)
+    {
+        if (isBusyElsewhere(engineConnection)) {
+            setSelectedAsync(engineConnection, selectable, position, isSelected);
+            return false;
+        }
+
+        return super.check(engineConnection, selectable, isSelected, position);
+    }
+
+    @Override
+    public <T extends Selectable> boolean check(IEngineConnection<T> engineConnection, List<T> selectableList,
+                                                boolean isSelected, int[] positions)
+    {
+        if (isBusyElsewhere(engineConnection)) {
+            setSelectedAsync(engineConnection, selectableList, positions, isSelected);
+            return false;
+        }
+
+        return super.check(engineConnection, selectableList, isSelected, positions);
+    }
+
+    @Override
+    public <T extends Selectable> void informListeners(final IEngineConnection<T> engineConnection,
+                                                       final T selectable, final boolean isSelected,
+                                                       final int position)
+    {
+        // counted on the thread that made the change, because the selection may change again before the post runs
+        updateSelectionCount(engineConnection);
+
+        if (isMainThread())
+            dispatchListeners(engineConnection, selectable, isSelected, position);
+        else
+            mMainHandler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    dispatchListeners(engineConnection, selectable, isSelected, position);
+                }
+            });
+    }
+
+    @Override
+    public <T extends Selectable> void informListeners(final IEngineConnection<T> engineConnection,
+                                                       final List<T> selectableList, final boolean isSelected,
+                                                       final int[] positions)
+    {
+        updateSelectionCount(engineConnection);
+
+        if (isMainThread())
+            dispatchListeners(engineConnection, selectableList, isSelected, positions);
+        else
+            mMainHandler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    dispatchListeners(engineConnection, selectableList, isSelected, positions);
+                }
+            });
+    }
+
+    /**
+     * Remove the connection. If it still has tasks waiting or running, its executor is kept until they are done, so
+     * that the tasks that are submitted for it afterwards still wait for them.
+     */
+    @Override
+    public boolean removeSlot(IBaseEngineConnection selectionConnection)
+    {
+        synchronized (mSerialExecutorMap) {
+            SerialExecutor serialExecutor = mSerialExecutorMap.get(selectionConnection);
+
+            if (serialExecutor != null && serialExecutor.isIdle())
+                mSerialExecutorMap.remove(selectionConnection);
+        }
+
+        return super.removeSlot(selectionConnection);
+    }
+
+    @Override
+    public void removeSlots()
+    {
+        synchronized (mSerialExecutorMap) {
+            Iterator<SerialExecutor> iterator = mSerialExecutorMap.values().iterator();
+
+            // the busy ones are dropped from the weak map when their connections are no longer used
+            while (iterator.hasNext())
+                if (iterator.next().isIdle())
+                    iterator.remove();
+        }
+
+        super.removeSlots();
+    }
+
+    /**
+     * Call {@link IEngineConnection#setSelected(Selectable, int, boolean)} on the background executor.
+     *
+     * @return the future result of the call
+     * @see IEngineConnection#setSelected(Selectable, int, boolean)
+     */
+    public <T extends Selectable> Future<Boolean> setSelectedAsync(final IEngineConnection<T> connection,
+                                                                   final T selectable, final int position,
+                                                                   final boolean selected)
+    {
+        return submit(connection, new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return connection.setSelected(selectable, position, selected);
+            }
+        });
+    }
+
+    /**
+     * Call {@link IEngineConnection#setSelected(List, int[], boolean)} on the background executor. The list and the
+     * positions shouldn't be modified until the call completes.
+     *
+     * @return the future result of the call
+     * @see IEngineConnection#setSelected(List, int[], boolean)
+     */
+    public <T extends Selectable> Future<Boolean> setSelectedAsync(final IEngineConnection<T> connection,
+                                                                   final List<T> selectableList,
+                                                                   final int[] positions, final boolean selected)
+    {
+        return submit(connection, new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return connection.setSelected(selectableList, positions, selected);
+            }
+        });
+    }
+
+    /**
+     * Run a task that alters the selection of the given connection on the background executor. The tasks that are
+     * submitted for the same connection will not run at the same time and will run in the order they are submitted.
+     * This can be used to run any call that is not covered by the other methods, like the range calls of
+     * {@link IPositionalEngineConnection} or a batch of calls surrounded with {@link EngineConnection#beginBatch()}
+     * and {@link EngineConnection#commit()}.
+     *
+     * @param connection whose selection will be altered by the task
+     * @param task       to run
+     * @param <V>        the type of the result
+     * @return the future result of the task
+     */
+    public <V> Future<V> submit(IBaseEngineConnection connection, Callable<V> task)
+    {
+        FutureTask<V> futureTask = new FutureTask<>(task);
+
+        // queued under the lock, so that the executor cannot be found idle and removed in between
+        synchronized (mSerialExecutorMap) {
+            SerialExecutor serialExecutor = mSerialExecutorMap.get(connection);
+
+            if (serialExecutor == null) {
+                serialExecutor = new SerialExecutor(mExecutor);
+                mSerialExecutorMap.put(connection, serialExecutor);
+            }
+
+            serialExecutor.execute(futureTask);
+        }
+
+        return futureTask;
+    }
+
+    /**
+     * @param connection that is being changed
+     * @return true when the connection has tasks to run and the current thread is not running one of them
+     */
+    private boolean isBusyElsewhere(IBaseEngineConnection connection)
+    {
+        SerialExecutor serialExecutor;
+
+        synchronized (mSerialExecutorMap) {
+            serialExecutor = mSerialExecutorMap.get(connection);
+        }
+
+        return serialExecutor != null && !serialExecutor.isIdle() && !serialExecutor.isRunningOnCurrentThread();
+    }
+
+    private static boolean isMainThread()
+    {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * Runs the given tasks one by one on the executor it wraps.
+     */
+    private static class SerialExecutor implements Executor
+    {
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private final Executor mExecutor;
+        private Runnable mActive;
+        private volatile Thread mActiveThread;
+
+        SerialExecutor(Executor executor)
+        {
+            mExecutor = executor;
+        }
+
+        @Override
+        public synchronized void execute(@NonNull final Runnable runnable)
+        {
+            mTasks.offer(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    mActiveThread = Thread.currentThread();
+
+                    try {
+                        runnable.run();
+                    } finally {
+                        mActiveThread = null;
+                        scheduleNext();
+                    }
+                }
+            });
+
+            if (mActive == null)
+                scheduleNext();
+        }
+
+        /**
+         * @return true when there is no task waiting or running
+         */
+        synchronized boolean isIdle()
+        {
+            return mActive == null && mTasks.isEmpty();
+        }
+
+        boolean isRunningOnCurrentThread()
+        {
+            return mActiveThread == Thread.currentThread();
+        }
+
+        private synchronized void scheduleNext()
+        {
+            if ((mActive = mTasks.poll()) != null)
+                mExecutor.execute(mActive);
+        }
+    }
+}
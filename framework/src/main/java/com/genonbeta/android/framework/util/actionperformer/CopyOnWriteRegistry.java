@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A registry for listeners and callbacks that is read much more often than it is modified. Each modification replaces
+ * the array holding the items with a new copy using a compare-and-set operation, so no lock is taken in either case.
+ * The readers iterate over the array returned by {@link #getSnapshot()} which never changes once published, so
+ * dispatching an event doesn't allocate or block and can be done on any thread, even when another thread is
+ * registering a new listener at the same time.
+ * <p>
+ * The items are compared with {@link Object#equals(Object)} and an item can only be added once.
+ *
+ * @param <T> the type of the items
+ */
+public final class CopyOnWriteRegistry<T>
+{
+    private final T[] mEmptyArray;
+    private final AtomicReference<T[]> mSnapshot;
+
+    /**
+     * Create a new registry.
+     *
+     * @param emptyArray a zero-length array whose type will be used for the snapshots, e.g., {@code new Listener[0]}
+     */
+    public CopyOnWriteRegistry(@NonNull T[] emptyArray)
+    {
+        if (emptyArray.length != 0)
+            throw new IllegalArgumentException("The array that is given as the initial value should be empty");
+
+        mEmptyArray = emptyArray;
+        mSnapshot = new AtomicReference<>(emptyArray);
+    }
+
+    /**
+     * Add a new item if it doesn't exist already.
+     *
+     * @param item to be added
+     * @return true when the item is added or already exists
+     */
+    public boolean add(@NonNull T item)
+    {
+        while (true) {
+            T[] current = mSnapshot.get();
+
+            if (indexOf(current, item) != -1)
+                return true;
+
+            T[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = item;
+
+            if (mSnapshot.compareAndSet(current, updated))
+                return true;
+        }
+    }
+
+    /**
+     * Remove all the items.
+     */
+    public void clear()
+    {
+        mSnapshot.set(mEmptyArray);
+    }
+
+    /**
+     * @param item to be checked
+     * @return true when the item is in the registry
+     */
+    public boolean contains(T item)
+    {
+        return indexOf(mSnapshot.get(), item) != -1;
+    }
+
+    /**
+     * The array returned by this method is never modified. Do not modify it yourself, either.
+     *
+     * @return the items that are registered at the moment of the call
+     */
+    @NonNull
+    public T[] getSnapshot()
+    {
+        return mSnapshot.get();
+    }
+
+    /**
+     * @return true when there are no items
+     */
+    public boolean isEmpty()
+    {
+        return mSnapshot.get().length == 0;
+    }
+
+    /**
+     * Remove a previously added item.
+     *
+     * @param item to be removed
+     * @return true when the item existed and is now removed
+     */
+    public boolean remove(T item)
+    {
+        while (true) {
+            T[] current = mSnapshot.get();
+            int index = indexOf(current, item);
+
+            if (index == -1)
+                return false;
+
+            T[] updated = Arrays.copyOf(current, current.length - 1);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+
+            if (mSnapshot.compareAndSet(current, updated))
+                return true;
+        }
+    }
+
+    /**
+     * @return the number of the items
+     */
+    public int size()
+    {
+        return mSnapshot.get().length;
+    }
+
+    private static int indexOf(Object[] array, Object item)
+    {
+        if (item != null)
+            for (int i = 0; i < array.length; i++)
+                if (item.equals(array[i]))
+                    return i;
+
+        return -1;
+    }
+}
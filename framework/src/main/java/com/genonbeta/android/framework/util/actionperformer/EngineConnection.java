@@ -18,13 +18,21 @@
 
 package com.genonbeta.android.framework.util.actionperformer;
 
+import android.os.Bundle;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.genonbeta.android.framework.object.Selectable;
+import com.genonbeta.android.framework.object.StableSelectable;
+import com.genonbeta.android.framework.util.LongHashSet;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static androidx.recyclerview.widget.RecyclerView.NO_POSITION;
 import static androidx.recyclerview.widget.RecyclerView.ViewHolder;
@@ -33,11 +41,30 @@ public class EngineConnection<T extends Selectable> implements IEngineConnection
 {
     public static final String TAG = EngineConnection.class.getSimpleName();
 
+    private static final String KEY_SELECTED_IDS = "selectedIds";
+    private static final String KEY_SELECTED_POSITIONS = "selectedPositions";
+    private static final String KEY_AVAILABLE_COUNT = "availableCount";
+
     private PerformerEngineProvider mEngineProvider;
     private SelectableProvider<T> mSelectableProvider;
     private SelectableHost<T> mSelectableHost;
     private CharSequence mDefinitiveTitle;
-    private final List<SelectionListener<T>> mSelectionListenerList = new ArrayList<>();
+    @SuppressWarnings("unchecked")
+    private final CopyOnWriteRegistry<SelectionListener<T>> mSelectionListenerRegistry = new CopyOnWriteRegistry<>(
+            (SelectionListener<T>[]) new SelectionListener<?>[0]);
+    private final Object mBatchLock = new Object();
+    private final Map<T, PendingChange<T>> mPendingChangeMap = new LinkedHashMap<>();
+    private int mBatchDepth = 0;
+
+    /**
+     * Create a connection whose selected items are held by a {@link SelectableHostImpl}.
+     *
+     * @param provider that will supply the engine
+     */
+    public EngineConnection(@NonNull PerformerEngineProvider provider)
+    {
+        this(provider, new SelectableHostImpl<T>());
+    }
 
     public EngineConnection(@NonNull PerformerEngineProvider provider, @NonNull SelectableHost<T> host)
     {
@@ -48,29 +75,31 @@ public class EngineConnection<T extends Selectable> implements IEngineConnection
     @Override
     public boolean addSelectionListener(SelectionListener<T> listener)
     {
-        synchronized (mSelectionListenerList) {
-            return mSelectionListenerList.contains(listener) || mSelectionListenerList.add(listener);
+        return mSelectionListenerRegistry.add(listener);
+    }
+
+    /**
+     * Start a batch so that the listeners are not informed until {@link #commit()} is called. The selection calls
+     * still go through {@link IPerformerEngine#check} for each item, and the state is applied right away. Only the
+     * calls to the listeners are held back. The batches can be nested, and only the outermost {@link #commit()}
+     * informs the listeners.
+     *
+     * @see PerformerEngine#beginBatch()
+     */
+    public void beginBatch()
+    {
+        synchronized (mBatchLock) {
+            mBatchDepth++;
         }
     }
 
     protected boolean changeSelectionState(T selectable, boolean selected, int position)
     {
         if (selected != selectable.isSelectableSelected() && selectable.setSelectableSelected(selected)) {
-            IPerformerEngine engine = getEngineProvider().getPerformerEngine();
-            SelectableHost<T> host = getSelectableHost();
-
-            if (selected)
-                host.getSelectableList().add(selectable);
-            else
-                host.getSelectableList().remove(selectable);
-
-            if (engine != null) {
-                for (SelectionListener<T> listener : mSelectionListenerList)
-                    listener.onSelected(engine, this, selectable, selected, position);
+            updateHost(selectable, selected, position);
 
-                engine.informListeners(this, selectable, selected, position);
-            } else
-                Log.d(TAG, "changeSelectionState: Engine is empty. Skipping the call for listeners!");
+            if (!holdIfInBatch(selectable, selected, position))
+                informListeners(selectable, selected, position);
 
             return true;
         }
@@ -80,23 +109,88 @@ public class EngineConnection<T extends Selectable> implements IEngineConnection
 
     protected void changeSelectionState(List<T> selectableList, boolean selected, int[] positions)
     {
-        IPerformerEngine engine = getEngineProvider().getPerformerEngine();
+        List<T> changedList = new ArrayList<>();
+        int[] changedPositions = new int[selectableList.size()];
+
+        for (int i = 0; i < selectableList.size(); i++) {
+            T selectable = selectableList.get(i);
+            int position = positions != null && i < positions.length ? positions[i] : NO_POSITION;
 
-        for (T selectable : selectableList) {
-            if (selected != selectable.isSelectableSelected() && selectable.setSelectableSelected(selected))
-                if (selected)
-                    getSelectedItemList().add(selectable);
-                else
-                    getSelectedItemList().remove(selectable);
+            if (selected != selectable.isSelectableSelected() && selectable.setSelectableSelected(selected)) {
+                updateHost(selectable, selected, position);
+                changedPositions[changedList.size()] = position;
+                changedList.add(selectable);
+            }
         }
 
-        if (engine != null) {
-            for (SelectionListener<T> listener : mSelectionListenerList)
-                listener.onSelected(engine, this, selectableList, selected, positions);
+        if (!holdIfInBatch(changedList, selected, changedPositions))
+            informListeners(selectableList, selected, positions);
+    }
 
-            engine.informListeners(this, selectableList, selected, positions);
-        } else
-            Log.d(TAG, "changeSelectionState: Engine is empty. Skipping the call for listeners!");
+    /**
+     * Find the positions of the selected items in {@link #getAvailableList()}. This goes over the available list
+     * once and checks each item with {@link #isSelectedOnHost(Selectable, int)}.
+     *
+     * @return the positions marked as selected
+     */
+    protected BitSet collectSelectedPositions()
+    {
+        List<T> availableList = getAvailableList();
+        BitSet positions = new BitSet(availableList.size());
+
+        for (int i = 0; i < availableList.size(); i++)
+            if (isSelectedOnHost(availableList.get(i), i))
+                positions.set(i);
+
+        return positions;
+    }
+
+    /**
+     * End the batch that was started with {@link #beginBatch()}. If this ends the outermost batch, the listeners
+     * are informed of the items whose state has changed with at most one call for the selected items and one for
+     * the deselected items. The items that were changed and then reverted during the batch are left out.
+     *
+     * @throws IllegalStateException when there is no batch to commit
+     */
+    public void commit()
+    {
+        List<T> selectedList = new ArrayList<>();
+        List<T> deselectedList = new ArrayList<>();
+        int[] selectedPositions;
+        int[] deselectedPositions;
+
+        synchronized (mBatchLock) {
+            if (mBatchDepth == 0)
+                throw new IllegalStateException("There is no batch to commit. Did you call beginBatch()?");
+
+            if (--mBatchDepth > 0 || mPendingChangeMap.isEmpty())
+                return;
+
+            selectedPositions = new int[mPendingChangeMap.size()];
+            deselectedPositions = new int[mPendingChangeMap.size()];
+
+            for (PendingChange<T> change : mPendingChangeMap.values()) {
+                // changed, but then reverted in the same batch
+                if (change.selected == change.initialState)
+                    continue;
+
+                if (change.selected) {
+                    selectedPositions[selectedList.size()] = change.position;
+                    selectedList.add(change.selectable);
+                } else {
+                    deselectedPositions[deselectedList.size()] = change.position;
+                    deselectedList.add(change.selectable);
+                }
+            }
+
+            mPendingChangeMap.clear();
+        }
+
+        if (selectedList.size() > 0)
+            informListeners(selectedList, true, Arrays.copyOf(selectedPositions, selectedList.size()));
+
+        if (deselectedList.size() > 0)
+            informListeners(deselectedList, false, Arrays.copyOf(deselectedPositions, deselectedList.size()));
     }
 
     @Override
@@ -130,6 +224,16 @@ public class EngineConnection<T extends Selectable> implements IEngineConnection
         return getSelectableHost().getSelectableList();
     }
 
+    /**
+     * Count the selected items without compiling a list of them.
+     *
+     * @return the number of the selected items
+     */
+    public int getSelectedItemCount()
+    {
+        return getSelectableHost().getSelectableList().size();
+    }
+
     @Override
     public List<T> getAvailableList()
     {
@@ -148,18 +252,128 @@ public class EngineConnection<T extends Selectable> implements IEngineConnection
         return mSelectableProvider;
     }
 
+    /**
+     * @return true when a batch has been started with {@link #beginBatch()} and is not committed yet
+     */
+    public boolean isInBatch()
+    {
+        synchronized (mBatchLock) {
+            return mBatchDepth > 0;
+        }
+    }
+
     @Override
     public boolean isSelectedOnHost(T selectable)
     {
         return getSelectedItemList().contains(selectable);
     }
 
+    /**
+     * The same as {@link #isSelectedOnHost(Selectable)}, but the position of the selectable is also provided in case
+     * the derivatives can make use of it.
+     *
+     * @param selectable that needs to be checked whether it is stored
+     * @param position   where the selectable is located in {@link #getAvailableList()} or
+     *                   {@link androidx.recyclerview.widget.RecyclerView#NO_POSITION} if it is not known
+     * @return true when it exists in the host's list
+     */
+    protected boolean isSelectedOnHost(T selectable, int position)
+    {
+        return isSelectedOnHost(selectable);
+    }
+
     @Override
     public boolean removeSelectionListener(SelectionListener<T> listener)
     {
-        synchronized (mSelectionListenerList) {
-            return mSelectionListenerList.remove(listener);
+        return mSelectionListenerRegistry.remove(listener);
+    }
+
+    /**
+     * Carry the selection over to the new objects after the list given by {@link SelectableProvider} is reloaded.
+     * The selection of {@link StableSelectable} objects is matched by their ids, so the new objects with the same ids
+     * are marked as selected in a single pass over the new list without asking {@link PerformerCallback}. The items
+     * whose ids are not on the new list anymore, and the items that cannot be identified with an id, are deselected.
+     * <p>
+     * The listeners are informed with at most one call for the deselected items and one for the selected items. The
+     * old objects that were replaced are reported as deselected, with their positions on the new list, or
+     * {@link androidx.recyclerview.widget.RecyclerView#NO_POSITION} if they are not on it. The new objects that took
+     * their place are reported as selected with their positions. The objects that are on both lists and stay
+     * selected are not reported.
+     * <p>
+     * This is best called when the new list is loaded, e.g., in
+     * {@link androidx.loader.app.LoaderManager.LoaderCallbacks#onLoadFinished} after the adapter is updated.
+     */
+    public void reconcileSelection()
+    {
+        if (getSelectableProvider() == null)
+            return;
+
+        List<T> availableList = getAvailableList();
+        replaceSelection(availableList, findPositions(availableList, collectSelectedIds()));
+    }
+
+    /**
+     * Restore the selection state that was saved with {@link #saveSelectionState()}. The current selection is
+     * replaced, not merged: the items that are selected but not in the saved state are deselected. The items are
+     * marked as selected in one go, without asking {@link PerformerCallback} for each of them because they were
+     * already approved when they were first selected. The listeners are informed with at most one call for the
+     * deselected items and one for the selected items, and the items whose state stays the same are left out. If the
+     * selected items were {@link StableSelectable}, they are found by their ids. Otherwise, the state is only restored
+     * when the number of the available items is the same as it was when the state was saved.
+     *
+     * @param savedState that was created with {@link #saveSelectionState()}
+     * @return true when the state was restored, false when it couldn't be used and the selection was left as it is
+     */
+    public boolean restoreSelectionState(@Nullable Bundle savedState)
+    {
+        if (savedState == null || getSelectableProvider() == null)
+            return false;
+
+        List<T> availableList = getAvailableList();
+        int size = availableList.size();
+        long[] ids = savedState.getLongArray(KEY_SELECTED_IDS);
+        long[] words = savedState.getLongArray(KEY_SELECTED_POSITIONS);
+        BitSet savedPositions;
+
+        if (ids != null)
+            savedPositions = findPositions(availableList, ids);
+        else if (words == null)
+            return false;
+        else if (savedState.getInt(KEY_AVAILABLE_COUNT, -1) != size) {
+            Log.d(TAG, "restoreSelectionState: The list has changed since the state was saved. Skipping!");
+            return false;
+        } else
+            savedPositions = fromLongArray(words);
+
+        replaceSelection(availableList, savedPositions);
+        return true;
+    }
+
+    /**
+     * Save the selection state in a compact form so that it can be restored with
+     * {@link #restoreSelectionState(Bundle)} after a configuration change or when the process is recreated, e.g.,
+     * by putting the returned bundle into the one given to {@link android.app.Activity#onSaveInstanceState(Bundle)}.
+     * The positions of the selected items in the list that {@link SelectableProvider} gives are stored as a bitmap
+     * along with the ids of the ones that are {@link StableSelectable}.
+     *
+     * @return the saved state
+     */
+    @NonNull
+    public Bundle saveSelectionState()
+    {
+        Bundle bundle = new Bundle();
+
+        if (getSelectableProvider() != null) {
+            bundle.putLongArray(KEY_SELECTED_POSITIONS, toLongArray(collectSelectedPositions()));
+            bundle.putInt(KEY_AVAILABLE_COUNT, getAvailableList().size());
         }
+
+        LongHashSet selectedIds = collectSelectedIds();
+
+        if (!selectedIds.isEmpty())
+            bundle.putLongArray(KEY_SELECTED_IDS, selectedIds.toArray());
+
+        return bundle;
     }
 
     @Override
@@ -218,7 +432,7 @@ public class EngineConnection<T extends Selectable> implements IEngineConnection
     @Override
     public boolean setSelected(T selectable, int position) throws CouldNotAlterException
     {
-        boolean newState = !isSelectedOnHost(selectable);
+        boolean newState = !isSelectedOnHost(selectable, position);
 
         if (!setSelected(selectable, position, newState, true))
             throw new CouldNotAlterException("The selectable " + selectable + " state couldn't be altered. The " +
@@ -249,10 +463,10 @@ public class EngineConnection<T extends Selectable> implements IEngineConnection
     private boolean setSelected(T selectable, int position, boolean selected, boolean checked)
     {
         // if it is already the same
-        if (!checked && selected == isSelectedOnHost(selectable)) {
+        if (!checked && selected == isSelectedOnHost(selectable, position)) {
             if (selectable.isSelectableSelected() != selected && !selectable.setSelectableSelected(selected)) {
                 // Selectable was known as selected, but not selected and failed to change the state
-                getSelectedItemList().remove(selectable);
+                updateHost(selectable, false, position);
                 return false;
             }
 
@@ -264,4 +478,260 @@ public class EngineConnection<T extends Selectable> implements IEngineConnection
         return performerEngine != null && performerEngine.check(this, selectable, selected, position)
                 && changeSelectionState(selectable, selected, position);
     }
-}
\ No newline at end of file
+
+    /**
+     * Remove all the items from the host. This is called before the selection is rebuilt by
+     * {@link #reconcileSelection()}.
+     */
+    protected void clearHost()
+    {
+        getSelectableHost().getSelectableList().clear();
+    }
+
+    /**
+     * Collect the ids from the list of the host each time, so that they are right even if the list was changed
+     * directly.
+     *
+     * @return the ids of the selected {@link StableSelectable} items
+     */
+    private LongHashSet collectSelectedIds()
+    {
+        List<T> selectedList = getSelectedItemList();
+        LongHashSet idSet = new LongHashSet(selectedList.size());
+
+        for (T selectable : selectedList)
+            if (selectable instanceof StableSelectable)
+                idSet.add(((StableSelectable) selectable).getSelectableId());
+
+        return idSet;
+    }
+
+    private BitSet findPositions(List<T> availableList, long[] ids)
+    {
+        LongHashSet idSet = new LongHashSet(ids.length);
+
+        for (long id : ids)
+            idSet.add(id);
+
+        return findPositions(availableList, idSet);
+    }
+
+    private BitSet findPositions(List<T> availableList, LongHashSet idSet)
+    {
+        BitSet positions = new BitSet(availableList.size());
+
+        for (int i = 0; i < availableList.size(); i++) {
+            T selectable = availableList.get(i);
+
+            if (selectable instanceof StableSelectable
+                    && idSet.contains(((StableSelectable) selectable).getSelectableId()))
+                positions.set(i);
+        }
+
+        return positions;
+    }
+
+    /**
+     * Make the items at the given positions of the available list the only selected items without asking
+     * {@link PerformerCallback}. The previous selection is taken from {@link #getSelectedItemList()}, so it is what
+     * the connection itself reports, and it is compared by instance. The previously selected items that are not
+     * selected anymore are deselected and reported with their positions in the available list, or
+     * {@link androidx.recyclerview.widget.RecyclerView#NO_POSITION} if they are not on it. The newly selected items
+     * are reported with their positions. Nothing is reported for the items that stay selected.
+     *
+     * @param availableList the list given by {@link SelectableProvider}
+     * @param positions     of the items that should be selected
+     */
+    private void replaceSelection(List<T> availableList, BitSet positions)
+    {
+        List<T> previousList = new ArrayList<>(getSelectedItemList());
+        // the position of each previously selected item on the available list or NO_POSITION if it is not there
+        Map<T, Integer> previousPositions = new IdentityHashMap<>(previousList.size());
+
+        for (T selectable : previousList)
+            previousPositions.put(selectable, NO_POSITION);
+
+        clearHost();
+
+        List<T> selectedList = new ArrayList<>();
+        int[] selectedPositions = new int[positions.cardinality()];
+
+        for (int i = 0; i < availableList.size(); i++) {
+            T selectable = availableList.get(i);
+            boolean wasSelected = previousPositions.containsKey(selectable);
+
+            if (positions.get(i) && (selectable.isSelectableSelected() || selectable.setSelectableSelected(true))) {
+                updateHost(selectable, true, i);
+
+                if (wasSelected)
+                    previousPositions.remove(selectable);
+                else {
+                    selectedPositions[selectedList.size()] = i;
+                    selectedList.add(selectable);
+                }
+            } else if (wasSelected)
+                previousPositions.put(selectable, i);
+        }
+
+        List<T> deselectedList = new ArrayList<>();
+        int[] deselectedPositions = new int[previousPositions.size()];
+
+        for (T selectable : previousList) {
+            Integer position = previousPositions.remove(selectable);
+
+            // still selected or already reported
+            if (position == null)
+                continue;
+
+            selectable.setSelectableSelected(false);
+            deselectedPositions[deselectedList.size()] = position;
+            deselectedList.add(selectable);
+        }
+
+        if (deselectedList.size() > 0)
+            informChanges(deselectedList, false, Arrays.copyOf(deselectedPositions, deselectedList.size()));
+
+        if (selectedList.size() > 0)
+            informChanges(selectedList, true, Arrays.copyOf(selectedPositions, selectedList.size()));
+    }
+
+    /**
+     * Inform the listeners about a change that didn't go through the usual calls or keep it for {@link #commit()}
+     * if there is a batch.
+     */
+    private void informChanges(List<T> selectableList, boolean selected, int[] positions)
+    {
+        if (!holdIfInBatch(selectableList, selected, positions))
+            informListeners(selectableList, selected, positions);
+    }
+
+    /**
+     * Keep the change for {@link #commit()} if there is a batch. The check and the update are done under the same
+     * lock so that a batch committed on another thread cannot miss the change.
+     *
+     * @return true if the change is kept for the batch, or false if the listeners should be informed now
+     */
+    private boolean holdIfInBatch(T selectable, boolean selected, int position)
+    {
+        synchronized (mBatchLock) {
+            if (mBatchDepth == 0)
+                return false;
+
+            putPendingChange(selectable, selected, position);
+            return true;
+        }
+    }
+
+    private boolean holdIfInBatch(List<T> selectableList, boolean selected, int[] positions)
+    {
+        synchronized (mBatchLock) {
+            if (mBatchDepth == 0)
+                return false;
+
+            for (int i = 0; i < selectableList.size(); i++)
+                putPendingChange(selectableList.get(i), selected, positions[i]);
+
+            return true;
+        }
+    }
+
+    private void informListeners(T selectable, boolean selected, int position)
+    {
+        IPerformerEngine engine = getEngineProvider().getPerformerEngine();
+
+        if (engine != null) {
+            for (SelectionListener<T> listener : mSelectionListenerRegistry.getSnapshot())
+                listener.onSelected(engine, this, selectable, selected, position);
+
+            engine.informListeners(this, selectable, selected, position);
+        } else
+            Log.d(TAG, "changeSelectionState: Engine is empty. Skipping the call for listeners!");
+    }
+
+    private void informListeners(List<T> selectableList, boolean selected, int[] positions)
+    {
+        IPerformerEngine engine = getEngineProvider().getPerformerEngine();
+
+        if (engine != null) {
+            for (SelectionListener<T> listener : mSelectionListenerRegistry.getSnapshot())
+                listener.onSelected(engine, this, selectableList, selected, positions);
+
+            engine.informListeners(this, selectableList, selected, positions);
+        } else
+            Log.d(TAG, "changeSelectionState: Engine is empty. Skipping the call for listeners!");
+    }
+
+    /**
+     * Must be called while holding {@link #mBatchLock}.
+     */
+    private void putPendingChange(T selectable, boolean selected, int position)
+    {
+        PendingChange<T> change = mPendingChangeMap.get(selectable);
+
+        if (change == null)
+            mPendingChangeMap.put(selectable, new PendingChange<>(selectable, selected, position));
+        else {
+            change.selected = selected;
+
+            if (position != NO_POSITION)
+                change.position = position;
+        }
+    }
+
+    /**
+     * Store the new state of a selectable whose state has been altered. By default, this adds it to or removes it
+     * from the list of the {@link SelectableHost}.
+     *
+     * @param selectable whose state has been altered
+     * @param selected   is the new state
+     * @param position   where the selectable is located in {@link #getAvailableList()} or
+     *                   {@link androidx.recyclerview.widget.RecyclerView#NO_POSITION} if it is not known
+     */
+    protected void updateHost(T selectable, boolean selected, int position)
+    {
+        if (selected)
+            getSelectableHost().getSelectableList().add(selectable);
+        else
+            getSelectableHost().getSelectableList().remove(selectable);
+    }
+
+    private static BitSet fromLongArray(long[] words)
+    {
+        BitSet bitSet = new BitSet(words.length * Long.SIZE);
+
+        for (int i = 0; i < words.length; i++)
+            for (long word = words[i]; word != 0; word &= word - 1)
+                bitSet.set(i * Long.SIZE + Long.numberOfTrailingZeros(word));
+
+        return bitSet;
+    }
+
+    private static long[] toLongArray(BitSet bitSet)
+    {
+        long[] words = new long[(bitSet.length() + Long.SIZE - 1) / Long.SIZE];
+
+        for (int i = bitSet.nextSetBit(0); i >= 0; i = bitSet.nextSetBit(i + 1))
+            words[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+
+        return words;
+    }
+
+    /**
+     * A change that was made during a batch and is waiting for {@link #commit()} to be reported.
+     */
+    private static class PendingChange<T>
+    {
+        final T selectable;
+        final boolean initialState;
+        boolean selected;
+        int position;
+
+        PendingChange(T selectable, boolean selected, int position)
+        {
+            this.selectable = selectable;
+            this.initialState = !selected;
+            this.selected = selected;
+            this.position = position;
+        }
+    }
+}
@@ -66,7 +66,9 @@ public interface IEngineConnection<T extends Selectable> extends IBaseEngineConn
     SelectableProvider<T> getSelectableProvider();
 
     /**
-     * Ensure that the given selectable object is stored in {@link SelectableHost}
+     * Ensure that the given selectable object is stored in {@link SelectableHost}. This is only as fast as the
+     * list of the host can tell whether it contains the given item, e.g., {@link SelectionList} does it in
+     * constant time.
      *
      * @param selectable that needs to be checked whether it is stored
      * @return true when it exists in the host's list
@@ -31,7 +31,6 @@ import java.util.List;
  */
 public interface IPerformerEngine
 {
-
     /**
      * This is called when we want to ensure if there is any {@link IBaseEngineConnection} on any slot.
      *
@@ -123,6 +122,9 @@ public interface IPerformerEngine
      * selectables that are marked as selected from all connections. The problem is, though this is easier to
      * access each element, it isn't easy to refer to their owners after they are referred to as generic
      * {@link Selectable}. The better approach is to never mention them outside of their context.
+     * <p>
+     * Because this creates a new list each time, {@link PerformerEngine#getSelectionCount()} and
+     * {@link PerformerEngine#getSelection()} should be preferred when the list itself is not needed.
      *
      * @return the compiled list
      */
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import com.genonbeta.android.framework.object.Selectable;
+
+import java.util.List;
+
+/**
+ * A connection that stores the selection state by the positions of the items in {@link #getAvailableList()} rather
+ * than holding the selected items. This is useful when the selection is made mostly with positions, e.g., when the
+ * user drags over the items of a list, because it doesn't need to keep a list of the selected objects up-to-date.
+ * <p>
+ * As the positions are only valid for the list they were taken from, the selection should be cleared or restored
+ * when the list provided by {@link SelectableProvider} changes.
+ *
+ * @param <T> The derivative of the {@link Selectable} class
+ * @see PositionalEngineConnection
+ */
+public interface IPositionalEngineConnection<T extends Selectable> extends IEngineConnection<T>
+{
+    /**
+     * @return the positions of the selected items in {@link #getAvailableList()} in ascending order
+     */
+    int[] getSelectedPositions();
+
+    /**
+     * Invert the state of the items in the given range, that is, selecting the items that are not selected and
+     * deselecting the ones that are. This makes up to two calls to {@link #setSelected(List, int[], boolean)}, one
+     * for each state.
+     *
+     * @param start where the range starts in {@link #getAvailableList()} (inclusive)
+     * @param end   where the range ends in {@link #getAvailableList()} (exclusive)
+     * @return true when both of the calls succeeded
+     */
+    boolean invertRangeSelection(int start, int end);
+
+    /**
+     * Check the state of the item at the given position without looking it up in {@link #getAvailableList()}.
+     *
+     * @param position of the item in {@link #getAvailableList()}
+     * @return true when the item is selected
+     */
+    boolean isSelected(int position);
+
+    /**
+     * Mark the items in the given range with the given state. Only the items whose state is different will be
+     * passed to {@link #setSelected(List, int[], boolean)}, so the listeners will only be informed of the
+     * actual changes.
+     *
+     * @param start    where the range starts in {@link #getAvailableList()} (inclusive)
+     * @param end      where the range ends in {@link #getAvailableList()} (exclusive)
+     * @param selected is the new state
+     * @return true when the state is applied or when all the items were already in that state
+     */
+    boolean setRangeSelected(int start, int end, boolean selected);
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram with buckets that double in width, so a value is recorded into the bucket of its highest set bit. This
+ * keeps the memory fixed and the recording allocation-free while still telling 1 microsecond from 1 millisecond,
+ * which is what matters when looking for slow calls. The percentiles are therefore estimates that are rounded up to
+ * the upper bound of the bucket they fall into.
+ * <p>
+ * The values can be recorded from any thread.
+ */
+public class LatencyHistogram
+{
+    public static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * The bucket 0 only holds 0 and the bucket {@code n} holds the values from {@code 2^(n-1)} to {@code 2^n - 1}.
+     *
+     * @param bucket whose bounds are wanted
+     * @return the largest value that is recorded into the given bucket
+     */
+    public static long getBucketUpperBound(int bucket)
+    {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * Record a value. Negative values are counted as 0.
+     *
+     * @param value to be recorded
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+
+        mBuckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+
+        long max;
+        while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+            // retry until we are not the largest or we are set
+        }
+    }
+
+    /**
+     * @param bucket whose count is wanted
+     * @return the number of the values that were recorded into the bucket
+     */
+    public long getBucketCount(int bucket)
+    {
+        return mBuckets.get(bucket);
+    }
+
+    public long getCount()
+    {
+        return mCount.get();
+    }
+
+    public long getMax()
+    {
+        return mMax.get();
+    }
+
+    public double getMean()
+    {
+        long count = getCount();
+        return count == 0 ? 0 : (double) mSum.get() / count;
+    }
+
+    /**
+     * Estimate the value under which the given percentage of the recorded values fall.
+     *
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket that holds the percentile, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long count = getCount();
+
+        if (count == 0)
+            return 0;
+
+        long target = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets.get(i);
+
+            if (seen >= target && seen > 0)
+                return Math.min(getBucketUpperBound(i), getMax());
+        }
+
+        return getMax();
+    }
+
+    public long getSum()
+    {
+        return mSum.get();
+    }
+
+    /**
+     * Forget all the recorded values. The values that are being recorded at the same time may be partially counted.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            mBuckets.set(i, 0);
+
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LatencyHistogram{count=" + getCount() + ", mean=" + getMean() + ", p50=" + getPercentile(50)
+                + ", p99=" + getPercentile(99) + ", max=" + getMax() + "}";
+    }
+}
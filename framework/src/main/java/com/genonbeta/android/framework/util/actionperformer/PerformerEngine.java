@@ -18,24 +18,86 @@
 
 package com.genonbeta.android.framework.util.actionperformer;
 
+import androidx.annotation.Nullable;
 import com.genonbeta.android.framework.object.Selectable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 public class PerformerEngine implements IPerformerEngine
 {
-    private final List<IBaseEngineConnection> mConnectionList = new ArrayList<>();
-    private final List<PerformerCallback> mPerformerCallbackList = new ArrayList<>();
-    private final List<PerformerListener> mPerformerListenerList = new ArrayList<>();
+    private final CopyOnWriteRegistry<IBaseEngineConnection> mConnectionRegistry = new CopyOnWriteRegistry<>(
+            new IBaseEngineConnection[0]);
+    private final CopyOnWriteRegistry<PerformerCallback> mPerformerCallbackRegistry = new CopyOnWriteRegistry<>(
+            new PerformerCallback[0]);
+    private final CopyOnWriteRegistry<PerformerListener> mPerformerListenerRegistry = new CopyOnWriteRegistry<>(
+            new PerformerListener[0]);
+    private final Object mBatchLock = new Object();
+    private IBaseEngineConnection[] mBatchConnections = null;
+    private int mBatchDepth = 0;
+    private final Map<IBaseEngineConnection, Integer> mSelectionCountMap = new HashMap<>();
+    private volatile int mSelectionCount = 0;
+    private volatile PerformerMetricsListener mMetricsListener;
+    private final Iterable<Selectable> mSelection = new Iterable<Selectable>()
+    {
+        @Override
+        public Iterator<Selectable> iterator()
+        {
+            return new SelectionIterator(mConnectionRegistry.getSnapshot());
+        }
+    };
+
+    /**
+     * Start a batch on all the connections that are known at the moment. While the batch is open, the state changes
+     * are still checked with {@link PerformerCallback} for each item, but {@link PerformerListener} will only be
+     * informed once per connection when {@link #commit()} is called. Use this when making a lot of selection calls in
+     * a row, so that the listeners, e.g., {@link com.genonbeta.android.framework.ui.PerformerMenu}, don't need to
+     * update for each of them.
+     * <p>
+     * Only the connections that are {@link EngineConnection} instances can hold back their calls. The others inform
+     * the listeners as usual.
+     *
+     * @see EngineConnection#beginBatch()
+     */
+    public void beginBatch()
+    {
+        IBaseEngineConnection[] connections;
+
+        synchronized (mBatchLock) {
+            if (mBatchDepth++ > 0)
+                return;
+
+            connections = mBatchConnections = mConnectionRegistry.getSnapshot();
+        }
+
+        for (IBaseEngineConnection connection : connections)
+            if (connection instanceof EngineConnection)
+                ((EngineConnection<?>) connection).beginBatch();
+    }
 
     public <T extends Selectable> boolean check(IEngineConnection<T> engineConnection, T selectable, boolean isSelected,
                                                 int position)
     {
-        synchronized (mPerformerCallbackList) {
-            for (PerformerCallback callback : mPerformerCallbackList)
+        PerformerMetricsListener metricsListener = mMetricsListener;
+
+        for (PerformerCallback callback : mPerformerCallbackRegistry.getSnapshot()) {
+            if (metricsListener == null) {
                 if (!callback.onSelection(this, engineConnection, selectable, isSelected, position))
                     return false;
+            } else {
+                long startTime = System.nanoTime();
+                boolean accepted = callback.onSelection(this, engineConnection, selectable, isSelected, position);
+                metricsListener.onCallbackFinished(callback, 1, accepted, System.nanoTime() - startTime);
+
+                if (!accepted)
+                    return false;
+            }
         }
 
         return true;
@@ -45,49 +107,138 @@ public class PerformerEngine implements IPerformerEngine
     public <T extends Selectable> boolean check(IEngineConnection<T> engineConnection, List<T> selectableList,
                                                 boolean isSelected, int[] positions)
     {
-        synchronized (mPerformerCallbackList) {
-            for (PerformerCallback callback : mPerformerCallbackList)
+        PerformerMetricsListener metricsListener = mMetricsListener;
+
+        for (PerformerCallback callback : mPerformerCallbackRegistry.getSnapshot()) {
+            if (metricsListener == null) {
                 if (!callback.onSelection(this, engineConnection, selectableList, isSelected, positions))
                     return false;
+            } else {
+                long startTime = System.nanoTime();
+                boolean accepted = callback.onSelection(this, engineConnection, selectableList, isSelected,
+                        positions);
+                metricsListener.onCallbackFinished(callback, selectableList.size(), accepted,
+                        System.nanoTime() - startTime);
+
+                if (!accepted)
+                    return false;
+            }
         }
 
         return true;
     }
 
+    /**
+     * End the batch that was started with {@link #beginBatch()} and commit the connections that were part of it.
+     *
+     * @throws IllegalStateException when there is no batch to commit
+     * @see EngineConnection#commit()
+     */
+    public void commit()
+    {
+        IBaseEngineConnection[] connections;
+
+        synchronized (mBatchLock) {
+            if (mBatchDepth == 0)
+                throw new IllegalStateException("There is no batch to commit. Did you call beginBatch()?");
+
+            if (--mBatchDepth > 0)
+                return;
+
+            connections = mBatchConnections;
+            mBatchConnections = null;
+        }
+
+        // the listeners are called outside of the lock, so they can make further calls on the engine
+        for (IBaseEngineConnection connection : connections)
+            if (connection instanceof EngineConnection)
+                ((EngineConnection<?>) connection).commit();
+    }
+
     @Override
     public List<? extends Selectable> getSelectionList()
     {
         List<Selectable> selectableList = new ArrayList<>();
 
-        synchronized (mConnectionList) {
-            for (IBaseEngineConnection baseEngineConnection : mConnectionList)
-                selectableList.addAll(baseEngineConnection.getGenericSelectedItemList());
-        }
+        for (IBaseEngineConnection baseEngineConnection : mConnectionRegistry.getSnapshot())
+            selectableList.addAll(baseEngineConnection.getGenericSelectedItemList());
 
         return selectableList;
     }
 
+    /**
+     * A read-only view of the selectables that are marked as selected on all connections. Unlike
+     * {@link #getSelectionList()}, nothing is copied and each iteration goes over the lists of the connections
+     * directly, so it shouldn't be iterated while the selection is being changed on another thread.
+     *
+     * @return the iterable that goes over the selected items of all connections
+     */
+    public Iterable<Selectable> getSelection()
+    {
+        return mSelection;
+    }
+
+    /**
+     * Count the selectables that are marked as selected on all connections. The count is kept up-to-date with the
+     * calls to {@link #informListeners}, so this doesn't go over the connections. Because of that, the changes made
+     * during a batch will only be reflected after the batch is committed. Only the connections that have a slot are
+     * counted.
+     *
+     * @return the total number of the selected items
+     * @see #beginBatch()
+     */
+    public int getSelectionCount()
+    {
+        return mSelectionCount;
+    }
+
+    /**
+     * Count the selectables that are marked as selected on the given connection. The same rules with
+     * {@link #getSelectionCount()} apply.
+     *
+     * @param connection whose selected items will be counted
+     * @return the number of the selected items or 0 if the connection doesn't have a slot
+     */
+    public int getSelectionCount(IBaseEngineConnection connection)
+    {
+        synchronized (mSelectionCountMap) {
+            Integer count = mSelectionCountMap.get(connection);
+            return count == null ? 0 : count;
+        }
+    }
+
     @Override
     public List<IBaseEngineConnection> getConnectionList()
     {
-        return new ArrayList<>(mConnectionList);
+        return new ArrayList<>(Arrays.asList(mConnectionRegistry.getSnapshot()));
+    }
+
+    /**
+     * @return the listener that receives the timings of the calls or null if there isn't any
+     * @see #setMetricsListener(PerformerMetricsListener)
+     */
+    @Nullable
+    public PerformerMetricsListener getMetricsListener()
+    {
+        return mMetricsListener;
     }
 
+    @Override
     public boolean hasActiveSlots()
     {
-        return mConnectionList.size() > 0;
+        return !mConnectionRegistry.isEmpty();
     }
 
     @Override
     public boolean ensureSlot(PerformerEngineProvider provider, IBaseEngineConnection selectionConnection)
     {
-        synchronized (mConnectionList) {
-            if (mConnectionList.contains(selectionConnection) || mConnectionList.add(selectionConnection)) {
-                if (selectionConnection.getEngineProvider() != provider)
-                    selectionConnection.setEngineProvider(provider);
+        if (mConnectionRegistry.add(selectionConnection)) {
+            if (selectionConnection.getEngineProvider() != provider)
+                selectionConnection.setEngineProvider(provider);
 
-                return true;
-            }
+            updateSelectionCount(selectionConnection);
+
+            return true;
         }
 
         return false;
@@ -97,67 +248,188 @@ public class PerformerEngine implements IPerformerEngine
     public <T extends Selectable> void informListeners(IEngineConnection<T> engineConnection, T selectable,
                                                        boolean isSelected, int position)
     {
-        synchronized (mPerformerListenerList) {
-            for (PerformerListener listener : mPerformerListenerList)
-                listener.onSelected(this, engineConnection, selectable, isSelected, position);
-        }
+        updateSelectionCount(engineConnection);
+        dispatchListeners(engineConnection, selectable, isSelected, position);
     }
 
     @Override
     public <T extends Selectable> void informListeners(IEngineConnection<T> engineConnection, List<T> selectableList,
                                                        boolean isSelected, int[] positions)
     {
-        synchronized (mPerformerListenerList) {
-            for (PerformerListener listener : mPerformerListenerList)
+        updateSelectionCount(engineConnection);
+        dispatchListeners(engineConnection, selectableList, isSelected, positions);
+    }
+
+    /**
+     * Call the {@link PerformerListener} instances for a change whose count has already been taken with
+     * {@link #updateSelectionCount(IBaseEngineConnection)}. Unlike the count, this doesn't touch the connection, so
+     * it can run on a different thread than the one that made the change.
+     */
+    protected <T extends Selectable> void dispatchListeners(IEngineConnection<T> engineConnection, T selectable,
+                                                            boolean isSelected, int position)
+    {
+        PerformerMetricsListener metricsListener = mMetricsListener;
+
+        if (metricsListener == null) {
+            for (PerformerListener listener : mPerformerListenerRegistry.getSnapshot())
+                listener.onSelected(this, engineConnection, selectable, isSelected, position);
+            return;
+        }
+
+        metricsListener.onDispatch(engineConnection, 1);
+
+        for (PerformerListener listener : mPerformerListenerRegistry.getSnapshot()) {
+            long startTime = System.nanoTime();
+            listener.onSelected(this, engineConnection, selectable, isSelected, position);
+            metricsListener.onListenerFinished(listener, 1, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * @see #dispatchListeners(IEngineConnection, Selectable, boolean, int)
+     */
+    protected <T extends Selectable> void dispatchListeners(IEngineConnection<T> engineConnection,
+                                                            List<T> selectableList, boolean isSelected,
+                                                            int[] positions)
+    {
+        PerformerMetricsListener metricsListener = mMetricsListener;
+
+        if (metricsListener == null) {
+            for (PerformerListener listener : mPerformerListenerRegistry.getSnapshot())
                 listener.onSelected(this, engineConnection, selectableList, isSelected, positions);
+            return;
+        }
+
+        int itemCount = selectableList.size();
+        metricsListener.onDispatch(engineConnection, itemCount);
+
+        for (PerformerListener listener : mPerformerListenerRegistry.getSnapshot()) {
+            long startTime = System.nanoTime();
+            listener.onSelected(this, engineConnection, selectableList, isSelected, positions);
+            metricsListener.onListenerFinished(listener, itemCount, System.nanoTime() - startTime);
         }
     }
 
     @Override
     public boolean removeSlot(IBaseEngineConnection selectionConnection)
     {
-        synchronized (mConnectionList) {
-            return mConnectionList.remove(selectionConnection);
+        // removed under the same lock with the count, so that a late update cannot count it again
+        synchronized (mSelectionCountMap) {
+            Integer count = mSelectionCountMap.remove(selectionConnection);
+
+            if (count != null)
+                mSelectionCount -= count;
+
+            return mConnectionRegistry.remove(selectionConnection);
         }
     }
 
     @Override
     public void removeSlots()
     {
-        synchronized (mConnectionList) {
-            mConnectionList.clear();
+        synchronized (mSelectionCountMap) {
+            mSelectionCountMap.clear();
+            mSelectionCount = 0;
+            mConnectionRegistry.clear();
         }
     }
 
     @Override
     public boolean addPerformerCallback(PerformerCallback callback)
     {
-        synchronized (mPerformerCallbackList) {
-            return mPerformerCallbackList.contains(callback) || mPerformerCallbackList.add(callback);
-        }
+        return mPerformerCallbackRegistry.add(callback);
     }
 
     @Override
     public boolean addPerformerListener(PerformerListener listener)
     {
-        synchronized (mPerformerListenerList) {
-            return mPerformerListenerList.contains(listener) || mPerformerListenerList.add(listener);
-        }
+        return mPerformerListenerRegistry.add(listener);
     }
 
     @Override
     public boolean removePerformerCallback(PerformerCallback listener)
     {
-        synchronized (mPerformerCallbackList) {
-            return mPerformerCallbackList.remove(listener);
-        }
+        return mPerformerCallbackRegistry.remove(listener);
     }
 
     @Override
     public boolean removePerformerListener(PerformerListener listener)
     {
-        synchronized (mPerformerListenerList) {
-            return mPerformerListenerList.remove(listener);
+        return mPerformerListenerRegistry.remove(listener);
+    }
+
+    /**
+     * Set the listener that will receive how long each {@link PerformerCallback} and {@link PerformerListener} call
+     * takes. When there is no listener, the calls are not timed at all.
+     *
+     * @param listener to receive the timings or null to stop measuring
+     * @see PerformerMetrics
+     */
+    public void setMetricsListener(@Nullable PerformerMetricsListener listener)
+    {
+        mMetricsListener = listener;
+    }
+
+    /**
+     * Refresh the count of the given connection and apply the difference to the total count. The connections that
+     * don't have a slot are ignored. This reads the selection of the connection, so it should be called on the
+     * thread that has made the change.
+     *
+     * @param connection whose selection has changed
+     */
+    protected void updateSelectionCount(IBaseEngineConnection connection)
+    {
+        if (!mConnectionRegistry.contains(connection))
+            return;
+
+        int count = connection instanceof EngineConnection ? ((EngineConnection<?>) connection).getSelectedItemCount()
+                : connection.getGenericSelectedItemList().size();
+
+        synchronized (mSelectionCountMap) {
+            if (!mConnectionRegistry.contains(connection))
+                return;
+
+            Integer previousCount = mSelectionCountMap.put(connection, count);
+            mSelectionCount += count - (previousCount == null ? 0 : previousCount);
+        }
+    }
+
+    /**
+     * Goes over the selected items of the given connections one after another.
+     */
+    private static class SelectionIterator implements Iterator<Selectable>
+    {
+        private final IBaseEngineConnection[] mConnections;
+        private int mConnectionIndex = 0;
+        private Iterator<? extends Selectable> mCurrent = Collections.<Selectable>emptyList().iterator();
+
+        SelectionIterator(IBaseEngineConnection[] connections)
+        {
+            mConnections = connections;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!mCurrent.hasNext() && mConnectionIndex < mConnections.length)
+                mCurrent = mConnections[mConnectionIndex++].getGenericSelectedItemList().iterator();
+
+            return mCurrent.hasNext();
+        }
+
+        @Override
+        public Selectable next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            return mCurrent.next();
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException("The selection cannot be altered through this iterator");
         }
     }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the latency histograms of each {@link PerformerCallback} and {@link PerformerListener} type along with the
+ * dispatch counts and the size of the changes that were dispatched. The calls that take longer than the given
+ * threshold are logged as warnings, which by default is the time of a single frame.
+ * <p>
+ * The histograms are kept per class instead of per instance, so the listeners that are created again and again, e.g.,
+ * for each new fragment, don't pile up. After the histogram of a class is created, recording a call doesn't
+ * allocate, so this can be left on in the release builds.
+ *
+ * <pre>
+ *     PerformerMetrics metrics = new PerformerMetrics();
+ *     engine.setMetricsListener(metrics);
+ *     ...
+ *     Log.d(TAG, "Listeners: " + metrics.getListenerLatencies());
+ * </pre>
+ */
+public class PerformerMetrics implements PerformerMetricsListener
+{
+    public static final String TAG = PerformerMetrics.class.getSimpleName();
+
+    public static final long DEFAULT_SLOW_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    private final long mSlowThresholdNanos;
+    private final ConcurrentMap<Class<?>, LatencyHistogram> mCallbackLatencyMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, LatencyHistogram> mListenerLatencyMap = new ConcurrentHashMap<>();
+    private final LatencyHistogram mDispatchSizes = new LatencyHistogram();
+    private final AtomicLong mCallbackCount = new AtomicLong();
+    private final AtomicLong mRejectionCount = new AtomicLong();
+    private final AtomicLong mListenerCount = new AtomicLong();
+    private final AtomicLong mSlowCallCount = new AtomicLong();
+
+    public PerformerMetrics()
+    {
+        this(DEFAULT_SLOW_THRESHOLD_NANOS);
+    }
+
+    /**
+     * @param slowThresholdNanos is the duration after which a call is counted as slow and logged, or a negative value
+     *                           to never log
+     */
+    public PerformerMetrics(long slowThresholdNanos)
+    {
+        mSlowThresholdNanos = slowThresholdNanos;
+    }
+
+    /**
+     * @return the number of the calls made to the callbacks
+     */
+    public long getCallbackCount()
+    {
+        return mCallbackCount.get();
+    }
+
+    /**
+     * @return a copy of the map of callback types to their latencies in nanoseconds
+     */
+    public Map<Class<?>, LatencyHistogram> getCallbackLatencies()
+    {
+        return new HashMap<>(mCallbackLatencyMap);
+    }
+
+    /**
+     * @return the number of the items each dispatch was about, which is greater than 1 for list and batch changes
+     */
+    public LatencyHistogram getDispatchSizes()
+    {
+        return mDispatchSizes;
+    }
+
+    /**
+     * @return the number of the calls made to the listeners
+     */
+    public long getListenerCount()
+    {
+        return mListenerCount.get();
+    }
+
+    /**
+     * @return a copy of the map of listener types to their latencies in nanoseconds
+     */
+    public Map<Class<?>, LatencyHistogram> getListenerLatencies()
+    {
+        return new HashMap<>(mListenerLatencyMap);
+    }
+
+    /**
+     * @return the number of the calls to the callbacks that didn't allow the change
+     */
+    public long getRejectionCount()
+    {
+        return mRejectionCount.get();
+    }
+
+    /**
+     * @return the number of the calls that took longer than the threshold
+     */
+    public long getSlowCallCount()
+    {
+        return mSlowCallCount.get();
+    }
+
+    @Override
+    public void onCallbackFinished(PerformerCallback callback, int itemCount, boolean accepted, long durationNanos)
+    {
+        mCallbackCount.incrementAndGet();
+
+        if (!accepted)
+            mRejectionCount.incrementAndGet();
+
+        getHistogram(mCallbackLatencyMap, callback.getClass()).record(durationNanos);
+        checkSlow(callback, itemCount, durationNanos);
+    }
+
+    @Override
+    public void onListenerFinished(PerformerListener listener, int itemCount, long durationNanos)
+    {
+        mListenerCount.incrementAndGet();
+        getHistogram(mListenerLatencyMap, listener.getClass()).record(durationNanos);
+        checkSlow(listener, itemCount, durationNanos);
+    }
+
+    @Override
+    public void onDispatch(IBaseEngineConnection owner, int itemCount)
+    {
+        mDispatchSizes.record(itemCount);
+    }
+
+    /**
+     * Forget everything that has been recorded so far.
+     */
+    public void reset()
+    {
+        mCallbackLatencyMap.clear();
+        mListenerLatencyMap.clear();
+        mDispatchSizes.reset();
+        mCallbackCount.set(0);
+        mRejectionCount.set(0);
+        mListenerCount.set(0);
+        mSlowCallCount.set(0);
+    }
+
+    private void checkSlow(Object caller, int itemCount, long durationNanos)
+    {
+        if (mSlowThresholdNanos < 0 || durationNanos <= mSlowThresholdNanos)
+            return;
+
+        mSlowCallCount.incrementAndGet();
+        Log.w(TAG, caller.getClass().getName() + " took " + TimeUnit.NANOSECONDS.toMillis(durationNanos)
+                + "ms for " + itemCount + " item(s)");
+    }
+
+    @NonNull
+    private static LatencyHistogram getHistogram(ConcurrentMap<Class<?>, LatencyHistogram> map, Class<?> type)
+    {
+        LatencyHistogram histogram = map.get(type);
+
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = map.putIfAbsent(type, newHistogram);
+
+            if (histogram == null)
+                histogram = newHistogram;
+        }
+
+        return histogram;
+    }
+}
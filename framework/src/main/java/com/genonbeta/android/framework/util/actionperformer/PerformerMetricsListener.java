@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+/**
+ * Receives the timings of the calls that {@link PerformerEngine} makes to the {@link PerformerCallback} and
+ * {@link PerformerListener} objects. The engine only measures the calls when one of these is set with
+ * {@link PerformerEngine#setMetricsListener(PerformerMetricsListener)}, so leaving it unset costs nothing.
+ * <p>
+ * The methods are called on the thread that made the call being measured and right after it, so they should return
+ * quickly and shouldn't allocate. {@link PerformerMetrics} is an implementation that keeps histograms.
+ *
+ * @see PerformerMetrics
+ */
+public interface PerformerMetricsListener
+{
+    /**
+     * Called after a {@link PerformerCallback} has been asked whether a change is allowed.
+     *
+     * @param callback      that was called
+     * @param itemCount     is the number of the items that were checked with the call
+     * @param accepted      is what the callback returned
+     * @param durationNanos is how long the call took in nanoseconds
+     */
+    void onCallbackFinished(PerformerCallback callback, int itemCount, boolean accepted, long durationNanos);
+
+    /**
+     * Called after a {@link PerformerListener} has been informed of a change.
+     *
+     * @param listener      that was called
+     * @param itemCount     is the number of the items that the call was about
+     * @param durationNanos is how long the call took in nanoseconds
+     */
+    void onListenerFinished(PerformerListener listener, int itemCount, long durationNanos);
+
+    /**
+     * Called once for each change that is sent to the listeners, before any of them is called. A batch that is
+     * committed will be reported once with all the items that were changed during it.
+     *
+     * @param owner     is the connection that made the change
+     * @param itemCount is the number of the items that were changed
+     */
+    void onDispatch(IBaseEngineConnection owner, int itemCount);
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import androidx.annotation.NonNull;
+import com.genonbeta.android.framework.object.Selectable;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static androidx.recyclerview.widget.RecyclerView.NO_POSITION;
+
+/**
+ * An {@link EngineConnection} that keeps the selection state in a {@link BitSet} indexed by the positions of the items
+ * in {@link #getAvailableList()}. The list of the {@link SelectableHost} is only filled when
+ * {@link #getSelectedItemList()} is called after a change, so selecting thousands of items will not create a list
+ * until something needs it.
+ * <p>
+ * The calls that don't provide a position need to find the item in {@link #getAvailableList()} first, so the
+ * position based calls like {@link #setSelected(int)} and {@link #isSelected(int)} should be preferred.
+ *
+ * @param <T> The derivative of the {@link Selectable} class
+ */
+public class PositionalEngineConnection<T extends Selectable> extends EngineConnection<T>
+        implements IPositionalEngineConnection<T>
+{
+    private final BitSet mSelectedPositions = new BitSet();
+    private int mSelectedCount = 0;
+    private boolean mHostOutdated = false;
+    private List<T> mPositionedList;
+
+    public PositionalEngineConnection(@NonNull PerformerEngineProvider provider)
+    {
+        super(provider);
+    }
+
+    public PositionalEngineConnection(@NonNull PerformerEngineProvider provider, @NonNull SelectableHost<T> host)
+    {
+        super(provider, host);
+    }
+
+    @Override
+    protected void clearHost()
+    {
+        mSelectedPositions.clear();
+        mSelectedCount = 0;
+        mHostOutdated = true;
+    }
+
+    @Override
+    protected BitSet collectSelectedPositions()
+    {
+        return (BitSet) mSelectedPositions.clone();
+    }
+
+    @Override
+    public int[] getSelectedPositions()
+    {
+        int[] positions = new int[mSelectedCount];
+        int index = 0;
+
+        for (int i = mSelectedPositions.nextSetBit(0); i >= 0; i = mSelectedPositions.nextSetBit(i + 1))
+            positions[index++] = i;
+
+        return positions;
+    }
+
+    @Override
+    public List<T> getSelectedItemList()
+    {
+        List<T> selectedList = getSelectableHost().getSelectableList();
+
+        if (mHostOutdated) {
+            // the positions belong to the list they were marked on, which may have been replaced since
+            List<T> availableList = mPositionedList == null ? getAvailableList() : mPositionedList;
+            int size = availableList.size();
+
+            selectedList.clear();
+
+            for (int i = mSelectedPositions.nextSetBit(0); i >= 0 && i < size;
+                 i = mSelectedPositions.nextSetBit(i + 1))
+                selectedList.add(availableList.get(i));
+
+            mHostOutdated = false;
+        }
+
+        return selectedList;
+    }
+
+    @Override
+    public int getSelectedItemCount()
+    {
+        return mSelectedCount;
+    }
+
+    @Override
+    public boolean invertRangeSelection(int start, int end)
+    {
+        checkRange(start, end);
+
+        int[] selectPositions = collectPositions(start, end, false);
+        int[] deselectPositions = collectPositions(start, end, true);
+
+        // the result shouldn't short-circuit, the second call is made regardless of the first one
+        boolean result = selectPositions.length == 0 || setSelected(
+                new PositionList<>(getAvailableList(), selectPositions), selectPositions, true);
+
+        return (deselectPositions.length == 0 || setSelected(new PositionList<>(getAvailableList(),
+                deselectPositions), deselectPositions, false)) && result;
+    }
+
+    @Override
+    public boolean isSelected(int position)
+    {
+        return position >= 0 && mSelectedPositions.get(position);
+    }
+
+    @Override
+    public boolean isSelectedOnHost(T selectable)
+    {
+        return isSelected(getAvailableList().indexOf(selectable));
+    }
+
+    @Override
+    protected boolean isSelectedOnHost(T selectable, int position)
+    {
+        return position == NO_POSITION ? isSelectedOnHost(selectable) : isSelected(position);
+    }
+
+    @Override
+    public boolean setRangeSelected(int start, int end, boolean selected)
+    {
+        checkRange(start, end);
+
+        int[] positions = collectPositions(start, end, !selected);
+
+        return positions.length == 0 || setSelected(new PositionList<>(getAvailableList(), positions), positions,
+                selected);
+    }
+
+    @Override
+    protected void updateHost(T selectable, boolean selected, int position)
+    {
+        List<T> availableList = mPositionedList = getAvailableList();
+
+        if (position == NO_POSITION)
+            position = availableList.indexOf(selectable);
+
+        // the item is not on the list, so there is no position to mark
+        if (position < 0)
+            return;
+
+        if (mSelectedPositions.get(position) == selected)
+            return;
+
+        mSelectedPositions.set(position, selected);
+        mSelectedCount += selected ? 1 : -1;
+        mHostOutdated = true;
+    }
+
+    private void checkRange(int start, int end)
+    {
+        int size = getAvailableList().size();
+
+        if (start < 0 || end > size || start > end)
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") is out of [0, " + size + ")");
+    }
+
+    /**
+     * Collect the positions in the given range that are in the given state.
+     *
+     * @param start    of the range (inclusive)
+     * @param end      of the range (exclusive)
+     * @param selected the state of the positions to look for
+     * @return the positions in ascending order
+     */
+    private int[] collectPositions(int start, int end, boolean selected)
+    {
+        int count = 0;
+
+        for (int i = nextPosition(start, selected); i >= 0 && i < end; i = nextPosition(i + 1, selected))
+            count++;
+
+        int[] positions = new int[count];
+        int index = 0;
+
+        for (int i = nextPosition(start, selected); i >= 0 && i < end; i = nextPosition(i + 1, selected))
+            positions[index++] = i;
+
+        return positions;
+    }
+
+    private int nextPosition(int from, boolean selected)
+    {
+        return selected ? mSelectedPositions.nextSetBit(from) : mSelectedPositions.nextClearBit(from);
+    }
+
+    /**
+     * A read-only view of the items at the given positions so that range calls don't copy the items.
+     */
+    private static class PositionList<T> extends AbstractList<T> implements RandomAccess
+    {
+        private final List<T> mSource;
+        private final int[] mPositions;
+
+        PositionList(List<T> source, int[] positions)
+        {
+            mSource = source;
+            mPositions = positions;
+        }
+
+        @Override
+        public T get(int index)
+        {
+            return mSource.get(mPositions[index]);
+        }
+
+        @Override
+        public int size()
+        {
+            return mPositions.length;
+        }
+    }
+}
@@ -25,6 +25,10 @@ import java.util.List;
 /**
  * The idea here is that, by separating the selected items' holder from the {@link IEngineConnection} class, we can
  * store and restore list in the case of the items being deleted.
+ * <p>
+ * {@link EngineConnection} checks, adds and removes items on this list for every selection change, so the list that
+ * is returned should be quick at doing those. {@link SelectionList} is made for that purpose and
+ * {@link SelectableHostImpl} is an implementation using it.
  *
  * @param <T> The derivative of the {@link Selectable} class
  */
@@ -32,6 +36,7 @@ public interface SelectableHost<T extends Selectable>
 {
     /**
      * @return the items marked as selected
+     * @see SelectionList
      */
     List<T> getSelectableList();
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import com.genonbeta.android.framework.object.Selectable;
+
+import java.util.List;
+
+/**
+ * A {@link SelectableHost} that holds its items with a {@link SelectionList}, so that the membership checks made by
+ * {@link IEngineConnection#isSelectedOnHost(Selectable)} don't grow with the number of selected items.
+ *
+ * @param <T> The derivative of the {@link Selectable} class
+ */
+public class SelectableHostImpl<T extends Selectable> implements SelectableHost<T>
+{
+    private final SelectionList<T> mSelectableList;
+
+    public SelectableHostImpl()
+    {
+        this(new SelectionList<T>());
+    }
+
+    public SelectableHostImpl(SelectionList<T> selectableList)
+    {
+        mSelectableList = selectableList;
+    }
+
+    @Override
+    public List<T> getSelectableList()
+    {
+        return mSelectableList;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import androidx.annotation.NonNull;
+import com.genonbeta.android.framework.object.Selectable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * A list that keeps the insertion order of the selected items while also indexing them with a hash map, so that
+ * {@link #contains(Object)}, {@link #add(Selectable)} and {@link #remove(Object)} take constant time. This is the list
+ * that a {@link SelectableHost} is expected to return when the selection can grow big, e.g., a "select all" call on
+ * a list with thousands of items.
+ * <p>
+ * Removals leave an empty slot behind which is only cleaned when an indexed access is made, so a series of removals
+ * doesn't shift the rest of the list each time. The iterators keep their place when that happens, so the list can be
+ * read with {@link #get(int)} or {@link #indexOf(Object)} while it is being iterated. Because the items are hashed, a
+ * {@link Selectable} shouldn't change its {@link Object#hashCode()} while it is on the list. Also, since an item can
+ * be selected only once, adding an item that is already on the list will do nothing and return false.
+ *
+ * @param <T> The derivative of the {@link Selectable} class
+ * @see SelectableHostImpl
+ */
+public class SelectionList<T extends Selectable> extends AbstractList<T> implements RandomAccess
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final Map<T, Integer> mIndexMap;
+    private Object[] mSlots;
+    private int mSlotCount;
+    private int mSize;
+    private int mCompactionCount;
+
+    public SelectionList()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SelectionList(int initialCapacity)
+    {
+        int capacity = Math.max(initialCapacity, DEFAULT_CAPACITY);
+        mSlots = new Object[capacity];
+        mIndexMap = new HashMap<>(capacity);
+    }
+
+    @Override
+    public boolean add(T selectable)
+    {
+        if (selectable == null)
+            throw new NullPointerException("The selection list doesn't accept null items");
+
+        if (mIndexMap.containsKey(selectable))
+            return false;
+
+        ensureRoom();
+        mSlots[mSlotCount] = selectable;
+        mIndexMap.put(selectable, mSlotCount++);
+        mSize++;
+        modCount++;
+
+        return true;
+    }
+
+    @Override
+    public void add(int index, T selectable)
+    {
+        if (selectable == null)
+            throw new NullPointerException("The selection list doesn't accept null items");
+
+        if (index < 0 || index > mSize)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+
+        if (mIndexMap.containsKey(selectable))
+            return;
+
+        compact();
+        ensureRoom();
+        System.arraycopy(mSlots, index, mSlots, index + 1, mSlotCount - index);
+        mSlots[index] = selectable;
+        mSlotCount++;
+        mSize++;
+        modCount++;
+
+        for (int i = index; i < mSlotCount; i++)
+            mIndexMap.put(getSlot(i), i);
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(mSlots, 0, mSlotCount, null);
+        mIndexMap.clear();
+        mSlotCount = 0;
+        mSize = 0;
+        modCount++;
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        return o != null && mIndexMap.containsKey(o);
+    }
+
+    @Override
+    public T get(int index)
+    {
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+
+        compact();
+        return getSlot(index);
+    }
+
+    @Override
+    public int indexOf(Object o)
+    {
+        if (o == null || !mIndexMap.containsKey(o))
+            return -1;
+
+        compact();
+        return mIndexMap.get(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o)
+    {
+        return indexOf(o);
+    }
+
+    @NonNull
+    @Override
+    public Iterator<T> iterator()
+    {
+        return new SlotIterator();
+    }
+
+    @Override
+    public boolean remove(Object o)
+    {
+        if (o == null)
+            return false;
+
+        Integer slot = mIndexMap.remove(o);
+
+        if (slot == null)
+            return false;
+
+        mSlots[slot] = null;
+        mSize--;
+        modCount++;
+
+        // trailing empty slots can be reused right away
+        while (mSlotCount > 0 && mSlots[mSlotCount - 1] == null)
+            mSlotCount--;
+
+        return true;
+    }
+
+    @Override
+    public T remove(int index)
+    {
+        T selectable = get(index);
+        remove(selectable);
+        return selectable;
+    }
+
+    @Override
+    public T set(int index, T selectable)
+    {
+        if (selectable == null)
+            throw new NullPointerException("The selection list doesn't accept null items");
+
+        T previous = get(index);
+
+        if (previous.equals(selectable))
+            return previous;
+
+        if (mIndexMap.containsKey(selectable))
+            throw new IllegalArgumentException("The item " + selectable + " is already on the list");
+
+        mIndexMap.remove(previous);
+        mIndexMap.put(selectable, index);
+        mSlots[index] = selectable;
+
+        return previous;
+    }
+
+    @Override
+    public int size()
+    {
+        return mSize;
+    }
+
+    /**
+     * Move the items so that there are no empty slots left by removals. This is only done before an indexed access
+     * because the order of the items is all that matters for iterating and hashing.
+     */
+    private void compact()
+    {
+        if (mSlotCount == mSize)
+            return;
+
+        int target = 0;
+
+        for (int i = 0; i < mSlotCount; i++) {
+            Object item = mSlots[i];
+
+            if (item == null)
+                continue;
+
+            if (target != i) {
+                mSlots[target] = item;
+                mIndexMap.put(getSlot(target), target);
+            }
+
+            target++;
+        }
+
+        Arrays.fill(mSlots, target, mSlotCount, null);
+        mSlotCount = target;
+        mCompactionCount++;
+    }
+
+    private void ensureRoom()
+    {
+        if (mSlotCount < mSlots.length)
+            return;
+
+        // reuse the empty slots first if there are too many of them
+        if (mSlotCount - mSize > mSlotCount / 2) {
+            compact();
+            return;
+        }
+
+        mSlots = Arrays.copyOf(mSlots, mSlots.length + (mSlots.length >> 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T getSlot(int slot)
+    {
+        return (T) mSlots[slot];
+    }
+
+    /**
+     * Goes over the slots skipping the empty ones. Besides the slot it is at, it keeps the number of the items that
+     * come before it, which is where it should continue from after the empty slots are removed by {@link #compact()}.
+     */
+    private class SlotIterator implements Iterator<T>
+    {
+        private int mCursor = 0;
+        private int mIndex = 0;
+        private int mLastSlot = -1;
+        private int mExpectedModCount = modCount;
+        private int mExpectedCompactionCount = mCompactionCount;
+
+        @Override
+        public boolean hasNext()
+        {
+            skipEmptySlots();
+            return mCursor < mSlotCount;
+        }
+
+        @Override
+        public T next()
+        {
+            checkForComodification();
+            skipEmptySlots();
+
+            if (mCursor >= mSlotCount)
+                throw new NoSuchElementException();
+
+            mLastSlot = mCursor++;
+            mIndex++;
+            return getSlot(mLastSlot);
+        }
+
+        @Override
+        public void remove()
+        {
+            if (mLastSlot < 0)
+                throw new IllegalStateException();
+
+            checkForComodification();
+            skipEmptySlots();
+            SelectionList.this.remove(getSlot(mLastSlot));
+            mLastSlot = -1;
+            mIndex--;
+            mExpectedModCount = modCount;
+        }
+
+        private void checkForComodification()
+        {
+            if (modCount != mExpectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        private void skipEmptySlots()
+        {
+            if (mExpectedCompactionCount != mCompactionCount) {
+                // there are no empty slots before the items after a compaction, so the index is the slot
+                mCursor = mIndex;
+
+                if (mLastSlot >= 0)
+                    mLastSlot = mIndex - 1;
+
+                mExpectedCompactionCount = mCompactionCount;
+            }
+
+            while (mCursor < mSlotCount && mSlots[mCursor] == null)
+                mCursor++;
+        }
+    }
+}
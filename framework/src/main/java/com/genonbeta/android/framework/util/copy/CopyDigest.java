@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Computes a digest of the bytes as they are copied, so that the integrity of a copy can be checked without reading
+ * the file a second time. {@link #getInstance(String)} supports the checksums {@link #CRC32C} and {@link #CRC32} along
+ * with the algorithms of {@link MessageDigest}, e.g., {@link #MD5} and {@link #SHA_256}. Other algorithms can be
+ * plugged in by extending this class.
+ *
+ * @see CopyOptions#setDigestAlgorithm(String)
+ */
+public abstract class CopyDigest
+{
+    public static final String CRC32 = "CRC32";
+    public static final String CRC32C = "CRC32C";
+    public static final String MD5 = "MD5";
+    public static final String SHA_256 = "SHA-256";
+
+    private final String mAlgorithm;
+    private byte[] mScratch;
+
+    protected CopyDigest(String algorithm)
+    {
+        mAlgorithm = algorithm;
+    }
+
+    /**
+     * @param algorithm is the name of the checksum or the {@link MessageDigest} algorithm
+     * @return a new digest to be used for a single copy
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    @NonNull
+    public static CopyDigest getInstance(String algorithm) throws NoSuchAlgorithmException
+    {
+        if (CRC32C.equalsIgnoreCase(algorithm))
+            return new ChecksumDigest(CRC32C, new Crc32c());
+        else if (CRC32.equalsIgnoreCase(algorithm))
+            return new ChecksumDigest(CRC32, new CRC32());
+
+        return new MessageDigestImpl(MessageDigest.getInstance(algorithm));
+    }
+
+    /**
+     * @param digest to be turned into text
+     * @return the lowercase hexadecimal form of the digest
+     */
+    public static String toHex(byte[] digest)
+    {
+        char[] chars = new char[digest.length * 2];
+        String digits = "0123456789abcdef";
+
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = digits.charAt((digest[i] >> 4) & 0xf);
+            chars[i * 2 + 1] = digits.charAt(digest[i] & 0xf);
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Finish the digest. This should be called only once.
+     *
+     * @return the digest of all the bytes that were given
+     */
+    public abstract byte[] digest();
+
+    public String getAlgorithm()
+    {
+        return mAlgorithm;
+    }
+
+    public abstract void update(byte[] bytes, int offset, int length);
+
+    /**
+     * Update with the remaining bytes of the buffer. The position of the buffer is left as it was, so that the same
+     * bytes can be written afterwards.
+     *
+     * @param buffer whose remaining bytes will be used
+     */
+    public void update(ByteBuffer buffer)
+    {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+
+        if (mScratch == null)
+            mScratch = new byte[8192];
+
+        byte[] bytes = mScratch;
+        int position = buffer.position();
+
+        while (buffer.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), bytes.length);
+            buffer.get(bytes, 0, length);
+            update(bytes, 0, length);
+        }
+
+        buffer.position(position);
+    }
+
+    private static class ChecksumDigest extends CopyDigest
+    {
+        private final Checksum mChecksum;
+
+        ChecksumDigest(String algorithm, Checksum checksum)
+        {
+            super(algorithm);
+            mChecksum = checksum;
+        }
+
+        @Override
+        public byte[] digest()
+        {
+            long value = mChecksum.getValue();
+            return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length)
+        {
+            mChecksum.update(bytes, offset, length);
+        }
+    }
+
+    private static class MessageDigestImpl extends CopyDigest
+    {
+        private final MessageDigest mDigest;
+
+        MessageDigestImpl(MessageDigest digest)
+        {
+            super(digest.getAlgorithm());
+            mDigest = digest;
+        }
+
+        @Override
+        public byte[] digest()
+        {
+            return mDigest.digest();
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length)
+        {
+            mDigest.update(bytes, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer)
+        {
+            int position = buffer.position();
+            mDigest.update(buffer);
+            buffer.position(position);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The optional settings of a copy made with {@link com.genonbeta.android.framework.util.FileUtils}. The defaults
+ * behave like the overloads that don't take options.
+ */
+public class CopyOptions
+{
+    public static final long DEFAULT_PROGRESS_INTERVAL = 500;
+
+    private int mDepth = 1;
+    private long mProgressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private CopyProgressListener mProgressListener;
+    private boolean mResumable;
+    private int mVerifyWindow;
+    private String mDigestAlgorithm;
+    private boolean mVerifyAfterMove;
+
+    public CopyOptions()
+    {
+    }
+
+    /**
+     * Create a copy of the given options.
+     *
+     * @param options to copy the settings of
+     */
+    public CopyOptions(CopyOptions options)
+    {
+        mDepth = options.mDepth;
+        mProgressInterval = options.mProgressInterval;
+        mProgressListener = options.mProgressListener;
+        mResumable = options.mResumable;
+        mVerifyWindow = options.mVerifyWindow;
+        mDigestAlgorithm = options.mDigestAlgorithm;
+        mVerifyAfterMove = options.mVerifyAfterMove;
+    }
+
+    @Nullable
+    public String getDigestAlgorithm()
+    {
+        return mDigestAlgorithm;
+    }
+
+    public int getDepth()
+    {
+        return mDepth;
+    }
+
+    public long getProgressInterval()
+    {
+        return mProgressInterval;
+    }
+
+    @Nullable
+    public CopyProgressListener getProgressListener()
+    {
+        return mProgressListener;
+    }
+
+    /**
+     * @return the number of bytes at the end of the existing part to compare before resuming
+     * @see #setVerifyWindow(int)
+     */
+    public int getVerifyWindow()
+    {
+        return mVerifyWindow;
+    }
+
+    public boolean isResumable()
+    {
+        return mResumable;
+    }
+
+    public boolean isVerifyAfterMove()
+    {
+        return mVerifyAfterMove;
+    }
+
+    /**
+     * Compute a digest of the file while it is being copied, which is then given with {@link CopyResult#getDigest()}.
+     * When the copy is resumed, the part that is skipped is read from the source to be included in the digest.
+     *
+     * @param algorithm one of the algorithms supported by {@link CopyDigest#getInstance(String)}, or null to not
+     *                  compute a digest
+     */
+    public void setDigestAlgorithm(@Nullable String algorithm)
+    {
+        mDigestAlgorithm = algorithm;
+    }
+
+    /**
+     * @param depth the number of the buffers the reader can fill ahead of the writer, which makes the reads and writes
+     *              run on separate threads when it is larger than 1
+     * @see PipelinedCopier
+     */
+    public void setDepth(int depth)
+    {
+        mDepth = depth;
+    }
+
+    /**
+     * @param interval the least amount of time in milliseconds between two progress reports
+     */
+    public void setProgressInterval(long interval)
+    {
+        mProgressInterval = interval;
+    }
+
+    /**
+     * Continue from where the destination has been left instead of starting from the first byte, e.g., when an
+     * earlier copy was interrupted. The bytes the destination already has are skipped on the source and the rest are
+     * appended. When the destination is larger than the source, the copy starts over.
+     *
+     * @param resumable true to continue an earlier copy
+     * @see #setVerifyWindow(int)
+     */
+    public void setResumable(boolean resumable)
+    {
+        mResumable = resumable;
+    }
+
+    /**
+     * When moving a file by copying it, read the destination back and compare its digest with the one computed during
+     * the copy before deleting the source. If no algorithm is set, {@link CopyDigest#CRC32C} is used.
+     *
+     * @param verify true to verify the destination before the source is deleted
+     * @see #setDigestAlgorithm(String)
+     */
+    public void setVerifyAfterMove(boolean verify)
+    {
+        mVerifyAfterMove = verify;
+    }
+
+    /**
+     * Before resuming, compare this many bytes at the end of the existing part of the destination with the same part
+     * of the source, and start over if they don't match. This helps when the destination might belong to another
+     * file or when its last write might have been cut short.
+     *
+     * @param verifyWindow the number of bytes to compare or 0 to not compare
+     * @see #setResumable(boolean)
+     */
+    public void setVerifyWindow(int verifyWindow)
+    {
+        mVerifyWindow = verifyWindow;
+    }
+
+    /**
+     * @param listener to be informed of the progress or null to not measure it at all
+     */
+    public void setProgressListener(@Nullable CopyProgressListener listener)
+    {
+        mProgressListener = listener;
+    }
+}
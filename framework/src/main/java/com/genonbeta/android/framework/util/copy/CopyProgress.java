@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import com.genonbeta.android.framework.util.date.ElapsedTime;
+
+/**
+ * The state of a copy as it is given to {@link CopyProgressListener}. The throughput values are in bytes per second
+ * and the times are in milliseconds.
+ *
+ * @see ProgressTracker
+ */
+public class CopyProgress
+{
+    long mTotalBytes;
+    long mTransferredBytes;
+    long mElapsedTime;
+    double mThroughput;
+    double mSmoothedThroughput;
+    boolean mFinished;
+
+    private final ElapsedTime mRemainingTime = new ElapsedTime(0);
+
+    /**
+     * @return the time since the copy has started
+     */
+    public long getElapsedTime()
+    {
+        return mElapsedTime;
+    }
+
+    /**
+     * Estimate the time left using the smoothed throughput.
+     *
+     * @return the estimated time left or -1 if it is not known
+     */
+    public long getEta()
+    {
+        if (mFinished)
+            return 0;
+
+        if (mTotalBytes < 0 || mSmoothedThroughput <= 0)
+            return -1;
+
+        return (long) (Math.max(mTotalBytes - mTransferredBytes, 0) * 1000 / mSmoothedThroughput);
+    }
+
+    /**
+     * The {@link #getEta()} split into its units. The same instance is updated and returned on every call.
+     *
+     * @return the estimated time left which is 0 if it is not known
+     */
+    public ElapsedTime getRemainingTime()
+    {
+        mRemainingTime.set(Math.max(getEta(), 0));
+        return mRemainingTime;
+    }
+
+    /**
+     * @return the throughput since the last report
+     */
+    public double getThroughput()
+    {
+        return mThroughput;
+    }
+
+    /**
+     * @return the exponentially weighted moving average of the throughput which is steadier than
+     * {@link #getThroughput()}
+     */
+    public double getSmoothedThroughput()
+    {
+        return mSmoothedThroughput;
+    }
+
+    /**
+     * @return the size of the source or -1 if it is not known
+     */
+    public long getTotalBytes()
+    {
+        return mTotalBytes;
+    }
+
+    public long getTransferredBytes()
+    {
+        return mTransferredBytes;
+    }
+
+    /**
+     * @return true if this is the last report of the copy
+     */
+    public boolean isFinished()
+    {
+        return mFinished;
+    }
+}
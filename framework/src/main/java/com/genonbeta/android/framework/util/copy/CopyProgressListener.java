@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+/**
+ * Receives the progress of a copy at the interval given with {@link CopyOptions#setProgressInterval(long)}.
+ *
+ * @see CopyOptions#setProgressListener(CopyProgressListener)
+ */
+public interface CopyProgressListener
+{
+    /**
+     * Called on the thread that is writing, so it should return quickly. The progress object is reused for each call,
+     * so it shouldn't be kept after the call returns.
+     *
+     * @param progress of the copy
+     */
+    void onProgress(CopyProgress progress);
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The outcome of a copy made with {@link com.genonbeta.android.framework.util.FileUtils}.
+ */
+public class CopyResult
+{
+    private final long mLength;
+    private final long mSkippedBytes;
+    private final String mDigestAlgorithm;
+    private final byte[] mDigest;
+
+    public CopyResult(long length, long skippedBytes, @Nullable String digestAlgorithm, @Nullable byte[] digest)
+    {
+        mLength = length;
+        mSkippedBytes = skippedBytes;
+        mDigestAlgorithm = digestAlgorithm;
+        mDigest = digest;
+    }
+
+    /**
+     * @return the digest of the whole file or null if it wasn't asked for
+     * @see CopyOptions#setDigestAlgorithm(String)
+     */
+    @Nullable
+    public byte[] getDigest()
+    {
+        return mDigest;
+    }
+
+    @Nullable
+    public String getDigestAlgorithm()
+    {
+        return mDigestAlgorithm;
+    }
+
+    /**
+     * @return the digest in hexadecimal or null if it wasn't asked for
+     */
+    @Nullable
+    public String getDigestHex()
+    {
+        return mDigest == null ? null : CopyDigest.toHex(mDigest);
+    }
+
+    /**
+     * @return the length of the destination after the copy
+     */
+    public long getLength()
+    {
+        return mLength;
+    }
+
+    /**
+     * @return the number of bytes that the destination already had when the copy was resumed
+     */
+    public long getSkippedBytes()
+    {
+        return mSkippedBytes;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) which is what most of the storage systems use to check data integrity. The JDK only has it from
+ * Java 9 and Android from API level 26, so this is a table-driven version that processes 8 bytes at a time.
+ */
+public class Crc32c implements Checksum
+{
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+
+            for (int bit = 0; bit < 8; bit++)
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+
+            TABLES[0][i] = crc;
+        }
+
+        for (int i = 0; i < 256; i++)
+            for (int table = 1; table < 8; table++)
+                TABLES[table][i] = (TABLES[table - 1][i] >>> 8) ^ TABLES[0][TABLES[table - 1][i] & 0xff];
+    }
+
+    private int mCrc = 0xffffffff;
+
+    @Override
+    public void update(int b)
+    {
+        mCrc = (mCrc >>> 8) ^ TABLES[0][(mCrc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len)
+    {
+        int crc = mCrc;
+        int end = off + len;
+        int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3], t4 = TABLES[4], t5 = TABLES[5],
+                t6 = TABLES[6], t7 = TABLES[7];
+
+        while (end - off >= 8) {
+            int low = crc ^ ((b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16
+                    | (b[off + 3] & 0xff) << 24);
+
+            crc = t7[low & 0xff] ^ t6[(low >>> 8) & 0xff] ^ t5[(low >>> 16) & 0xff] ^ t4[low >>> 24]
+                    ^ t3[b[off + 4] & 0xff] ^ t2[b[off + 5] & 0xff] ^ t1[b[off + 6] & 0xff] ^ t0[b[off + 7] & 0xff];
+            off += 8;
+        }
+
+        while (off < end)
+            crc = (crc >>> 8) ^ t0[(crc ^ b[off++]) & 0xff];
+
+        mCrc = crc;
+    }
+
+    @Override
+    public long getValue()
+    {
+        return ~mCrc & 0xffffffffL;
+    }
+
+    @Override
+    public void reset()
+    {
+        mCrc = 0xffffffff;
+    }
+}
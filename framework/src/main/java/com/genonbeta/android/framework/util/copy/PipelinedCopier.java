@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import androidx.annotation.Nullable;
+import com.genonbeta.android.framework.util.Stoppable;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies between two channels with a reader and a writer running at the same time, so that a slow write doesn't stop
+ * the next read from starting. The reader runs on its own thread and fills the buffers in a ring of reusable direct
+ * buffers, while the writer runs on the calling thread and drains them in order. The depth is the number of buffers
+ * in the ring, and it decides how far the reader can get ahead of the writer.
+ * <p>
+ * The copy fails with an {@link IOException} when the task is interrupted or when the writer has waited for the source
+ * for longer than the timeout. The reader waiting for a slow writer doesn't count towards the timeout. Before returning
+ * or failing, the reader thread is interrupted if it is still running, which also closes the source when it is an
+ * interruptible channel, and it is waited for up to the timeout.
+ */
+public final class PipelinedCopier
+{
+    public static final int DEFAULT_DEPTH = 4;
+
+    /**
+     * How long to wait for the other side before checking if the task is stopped or timed out.
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    private final ReadableByteChannel mSource;
+    private final WritableByteChannel mDestination;
+    private final Stoppable mStoppable;
+    private final int mSocketTimeout;
+    private final ProgressTracker mTracker;
+    private final CopyDigest mDigest;
+    private final BlockingQueue<ByteBuffer> mFreeQueue;
+    private final BlockingQueue<ByteBuffer> mFilledQueue;
+    private volatile boolean mCancelled = false;
+    private volatile Throwable mReaderError;
+
+    private PipelinedCopier(ReadableByteChannel source, WritableByteChannel destination, Stoppable stoppable,
+                            int bufferLength, int depth, int socketTimeout, ProgressTracker tracker,
+                            CopyDigest digest)
+    {
+        mSource = source;
+        mDestination = destination;
+        mStoppable = stoppable;
+        mSocketTimeout = socketTimeout;
+        mTracker = tracker;
+        mDigest = digest;
+        mFreeQueue = new ArrayBlockingQueue<>(depth);
+        mFilledQueue = new ArrayBlockingQueue<>(depth + 1);
+
+        for (int i = 0; i < depth; i++)
+            mFreeQueue.add(ByteBuffer.allocateDirect(bufferLength));
+    }
+
+    /**
+     * Copy everything from the source to the destination. Neither of them is closed.
+     *
+     * @param source        to read from
+     * @param destination   to write to
+     * @param stoppable     to check if the task is interrupted
+     * @param bufferLength  the size of each buffer in the ring
+     * @param depth         the number of the buffers in the ring which should be at least 2 for the reads and writes
+     *                      to overlap
+     * @param socketTimeout how long the writer can wait for the source in milliseconds
+     * @return the number of bytes that were copied
+     * @throws Exception when reading or writing fails, or when the task is interrupted or timed out
+     */
+    public static long copy(ReadableByteChannel source, WritableByteChannel destination, Stoppable stoppable,
+                            int bufferLength, int depth, int socketTimeout) throws Exception
+    {
+        return copy(source, destination, stoppable, bufferLength, depth, socketTimeout, null, null);
+    }
+
+    /**
+     * @param tracker to count the written bytes with or null
+     * @param digest  to update with the written bytes or null
+     * @see #copy(ReadableByteChannel, WritableByteChannel, Stoppable, int, int, int)
+     */
+    public static long copy(ReadableByteChannel source, WritableByteChannel destination, Stoppable stoppable,
+                            int bufferLength, int depth, int socketTimeout, @Nullable ProgressTracker tracker,
+                            @Nullable CopyDigest digest) throws Exception
+    {
+        if (depth < 1)
+            throw new IllegalArgumentException("The depth should be at least 1");
+
+        return new PipelinedCopier(source, destination, stoppable, bufferLength, depth, socketTimeout, tracker,
+                digest).run();
+    }
+
+    /**
+     * The streams are wrapped with their own channels when they are file streams, so that the direct buffers can be
+     * used without an extra copy.
+     *
+     * @see #copy(ReadableByteChannel, WritableByteChannel, Stoppable, int, int, int)
+     */
+    public static long copy(InputStream inputStream, OutputStream outputStream, Stoppable stoppable, int bufferLength,
+                            int depth, int socketTimeout) throws Exception
+    {
+        return copy(inputStream, outputStream, stoppable, bufferLength, depth, socketTimeout, null, null);
+    }
+
+    /**
+     * @param tracker to count the written bytes with or null
+     * @param digest  to update with the written bytes or null
+     * @see #copy(InputStream, OutputStream, Stoppable, int, int, int)
+     */
+    public static long copy(InputStream inputStream, OutputStream outputStream, Stoppable stoppable, int bufferLength,
+                            int depth, int socketTimeout, @Nullable ProgressTracker tracker,
+                            @Nullable CopyDigest digest) throws Exception
+    {
+        ReadableByteChannel source = inputStream instanceof FileInputStream
+                ? ((FileInputStream) inputStream).getChannel() : Channels.newChannel(inputStream);
+        WritableByteChannel destination = outputStream instanceof FileOutputStream
+                ? ((FileOutputStream) outputStream).getChannel() : Channels.newChannel(outputStream);
+
+        return copy(source, destination, stoppable, bufferLength, depth, socketTimeout, tracker, digest);
+    }
+
+    private long run() throws Exception
+    {
+        Thread readerThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                read();
+            }
+        }, "PipelinedCopier reader");
+
+        readerThread.start();
+
+        try {
+            long written = write();
+            Throwable readerError = mReaderError;
+
+            if (readerError instanceof Exception)
+                throw (Exception) readerError;
+            else if (readerError instanceof Error)
+                throw (Error) readerError;
+
+            return written;
+        } finally {
+            mCancelled = true;
+
+            // when the copy fails, the reader may still be blocked on the source
+            if (readerThread.isAlive()) {
+                readerThread.interrupt();
+
+                try {
+                    readerThread.join(mSocketTimeout);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void read()
+    {
+        try {
+            while (!mCancelled) {
+                // waiting for the writer to free a buffer is not the source timing out
+                ByteBuffer buffer = take(mFreeQueue, false);
+                int len = 0;
+
+                buffer.clear();
+
+                // fill the buffer as much as possible, so that the writer doesn't wake up for small pieces
+                while (buffer.hasRemaining() && (len = mSource.read(buffer)) >= 0) {
+                    if (len == 0 && buffer.position() > 0)
+                        break;
+                }
+
+                buffer.flip();
+
+                if (buffer.hasRemaining())
+                    mFilledQueue.put(buffer);
+
+                if (len == -1)
+                    break;
+            }
+        } catch (Throwable e) {
+            mReaderError = e;
+        } finally {
+            // there is always room for this because the queue is one larger than the number of the buffers
+            mFilledQueue.offer(END_OF_STREAM);
+        }
+    }
+
+    private long write() throws Exception
+    {
+        long written = 0;
+
+        while (true) {
+            ByteBuffer buffer = take(mFilledQueue, true);
+
+            if (buffer == END_OF_STREAM)
+                return written;
+
+            int length = buffer.remaining();
+
+            if (mDigest != null)
+                mDigest.update(buffer);
+
+            while (buffer.hasRemaining())
+                mDestination.write(buffer);
+
+            written += length;
+
+            if (mTracker != null)
+                mTracker.onTransferred(length);
+
+            mFreeQueue.put(buffer);
+        }
+    }
+
+    /**
+     * Wait for a buffer from the other side while checking if the task is stopped or has timed out.
+     *
+     * @param timed true if the wait should fail after the socket timeout
+     */
+    private ByteBuffer take(BlockingQueue<ByteBuffer> queue, boolean timed) throws Exception
+    {
+        long startTime = System.currentTimeMillis();
+
+        while (true) {
+            ByteBuffer buffer = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+
+            if (buffer != null)
+                return buffer;
+
+            if (mCancelled || (timed && (System.currentTimeMillis() - startTime) > mSocketTimeout)
+                    || mStoppable.isInterrupted())
+                throw new IOException("Timed out or interrupted. Exiting!");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Counts the transferred bytes and reports them to a {@link CopyProgressListener} no more often than the given
+ * interval. Between the reports, counting the bytes only costs a call to {@link System#nanoTime()}, so it can be done
+ * for each chunk of a copy.
+ * <p>
+ * This isn't thread-safe and should be called by the thread that is writing.
+ */
+public class ProgressTracker
+{
+    /**
+     * The weight of the latest throughput in the smoothed throughput.
+     */
+    public static final double SMOOTHING_FACTOR = 0.3;
+
+    private final CopyProgressListener mListener;
+    private final long mIntervalNanos;
+    private final long mStartTime;
+    private final CopyProgress mProgress = new CopyProgress();
+    private long mLastReportTime;
+    private long mLastReportBytes;
+
+    /**
+     * @param listener   to report to
+     * @param interval   the least amount of time between two reports in milliseconds
+     * @param totalBytes the number of bytes to be transferred or -1 if it is not known
+     */
+    public ProgressTracker(@NonNull CopyProgressListener listener, long interval, long totalBytes)
+    {
+        mListener = listener;
+        mIntervalNanos = Math.max(interval, 0) * 1000000;
+        mStartTime = mLastReportTime = System.nanoTime();
+        mProgress.mTotalBytes = totalBytes;
+    }
+
+    /**
+     * Create a tracker with the listener and the interval of the given options.
+     *
+     * @return the tracker or null if there is no listener to report to
+     */
+    @Nullable
+    public static ProgressTracker from(CopyOptions options, long totalBytes)
+    {
+        CopyProgressListener listener = options.getProgressListener();
+        return listener == null ? null : new ProgressTracker(listener, options.getProgressInterval(), totalBytes);
+    }
+
+    /**
+     * Report for the last time with the final numbers.
+     */
+    public void finish()
+    {
+        mProgress.mFinished = true;
+        report(System.nanoTime());
+    }
+
+    public CopyProgress getProgress()
+    {
+        return mProgress;
+    }
+
+    /**
+     * Count the bytes that didn't need to be transferred, e.g., when resuming, without affecting the throughput.
+     *
+     * @param bytes that were skipped
+     */
+    public void onSkipped(long bytes)
+    {
+        mProgress.mTransferredBytes += bytes;
+        mLastReportBytes += bytes;
+    }
+
+    /**
+     * Count the bytes that were just transferred and report if the interval has passed.
+     *
+     * @param bytes that were transferred since the last call
+     */
+    public void onTransferred(long bytes)
+    {
+        mProgress.mTransferredBytes += bytes;
+
+        long now = System.nanoTime();
+
+        if (now - mLastReportTime >= mIntervalNanos)
+            report(now);
+    }
+
+    private void report(long now)
+    {
+        long elapsedNanos = now - mLastReportTime;
+
+        // the last report may come right after another, which shouldn't count as the throughput dropping to 0
+        if (elapsedNanos > 0 && mProgress.mTransferredBytes > mLastReportBytes) {
+            double throughput = (mProgress.mTransferredBytes - mLastReportBytes) * 1e9 / elapsedNanos;
+
+            mProgress.mThroughput = throughput;
+            mProgress.mSmoothedThroughput = mProgress.mSmoothedThroughput == 0 ? throughput
+                    : SMOOTHING_FACTOR * throughput + (1 - SMOOTHING_FACTOR) * mProgress.mSmoothedThroughput;
+        }
+
+        mProgress.mElapsedTime = (now - mStartTime) / 1000000;
+        mLastReportTime = now;
+        mLastReportBytes = mProgress.mTransferredBytes;
+
+        mListener.onProgress(mProgress);
+    }
+}
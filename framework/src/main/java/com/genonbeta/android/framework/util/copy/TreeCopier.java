@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import android.content.Context;
+import android.os.Build;
+import android.provider.DocumentsContract;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.genonbeta.android.framework.io.DirectorySnapshot;
+import com.genonbeta.android.framework.io.DocumentFile;
+import com.genonbeta.android.framework.io.LocalDocumentFile;
+import com.genonbeta.android.framework.io.TreeDocumentFile;
+import com.genonbeta.android.framework.util.FileUtils;
+import com.genonbeta.android.framework.util.Stoppable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies or moves a directory with everything in it. The directories are created first, one after another, and then
+ * the files are copied in parallel on a bounded pool of threads. Each directory in the destination is listed only
+ * once into a {@link DirectorySnapshot} that is shared by the copies of its files, which look their targets up in it
+ * one at a time. Because running many copies on the same storage at once usually makes all of them slower, the
+ * number of the copies that can read from or write to the same device at the same time is limited separately.
+ * <p>
+ * The whole task is stopped with the {@link Stoppable} that is given. The first copy to fail stops the files that
+ * haven't started yet, and its exception is thrown once the running copies end. The progress is reported for all the
+ * files together through the listener of the {@link CopyOptions}.
+ *
+ * <pre>
+ *     TreeCopier copier = new TreeCopier(context, stoppable, 8096, 5000);
+ *     copier.setMaxConcurrency(4);
+ *     copier.copy(sourceDirectory, destinationParent);
+ * </pre>
+ */
+public class TreeCopier
+{
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+    public static final int DEFAULT_MAX_CONCURRENCY_PER_DEVICE = 2;
+
+    /**
+     * How long to wait for a device to become available before checking if the task is stopped.
+     */
+    private static final long PERMIT_WAIT_INTERVAL = 100;
+
+    private final Context mContext;
+    private final Stoppable mStoppable;
+    private final int mBufferLength;
+    private final int mSocketTimeout;
+    private final Map<String, Semaphore> mDeviceSemaphoreMap = new HashMap<>();
+    private CopyOptions mOptions = new CopyOptions();
+    private int mMaxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private int mMaxConcurrencyPerDevice = DEFAULT_MAX_CONCURRENCY_PER_DEVICE;
+
+    public TreeCopier(Context context, Stoppable stoppable, int bufferLength, int socketTimeout)
+    {
+        mContext = context;
+        mStoppable = stoppable;
+        mBufferLength = bufferLength;
+        mSocketTimeout = socketTimeout;
+    }
+
+    /**
+     * Find a key that is the same for the files that are on the same storage device. The local files are grouped by
+     * the volume they are mounted under and the documents are grouped by their provider and root.
+     *
+     * @param file whose device is wanted
+     * @return the key of the device
+     */
+    public static String getDeviceKey(DocumentFile file)
+    {
+        if (file instanceof LocalDocumentFile) {
+            String[] segments = ((LocalDocumentFile) file).getFile().getAbsolutePath().split(File.separator);
+
+            // e.g., "/storage/emulated" or "/storage/1234-ABCD" and "/data" for the rest
+            if (segments.length > 2 && ("storage".equals(segments[1]) || "mnt".equals(segments[1])))
+                return File.separator + segments[1] + File.separator + segments[2];
+
+            return segments.length > 1 ? File.separator + segments[1] : File.separator;
+        }
+
+        String authority = file.getUri() == null ? null : file.getUri().getAuthority();
+
+        if (Build.VERSION.SDK_INT >= 21 && file instanceof TreeDocumentFile) {
+            String documentId = DocumentsContract.getDocumentId(file.getUri());
+            int rootEnd = documentId.indexOf(':');
+
+            return authority + File.separator + (rootEnd == -1 ? documentId : documentId.substring(0, rootEnd));
+        }
+
+        return String.valueOf(authority);
+    }
+
+    /**
+     * Copy the source directory into the destination directory using its name, so that the files end up in
+     * "destination/source-name/". The files that exist in the destination are overwritten.
+     *
+     * @param source      is the directory to copy
+     * @param destination is the directory to copy into
+     * @return the directory that holds the copy
+     * @throws Exception when a directory cannot be created, a file cannot be copied, or the task is stopped
+     */
+    public DocumentFile copy(DocumentFile source, DocumentFile destination) throws Exception
+    {
+        return run(source, destination, false);
+    }
+
+    public int getMaxConcurrency()
+    {
+        return mMaxConcurrency;
+    }
+
+    public int getMaxConcurrencyPerDevice()
+    {
+        return mMaxConcurrencyPerDevice;
+    }
+
+    @NonNull
+    public CopyOptions getOptions()
+    {
+        return mOptions;
+    }
+
+    /**
+     * Move the source directory into the destination directory. When both are local and on the same device, the
+     * directory is only renamed. Otherwise, it is copied file by file with each file deleted after it is copied, and
+     * the empty directories are deleted at the end.
+     *
+     * @return the directory that holds the moved files
+     * @throws Exception when a directory cannot be created, a file cannot be moved, or the task is stopped
+     * @see #copy(DocumentFile, DocumentFile)
+     */
+    public DocumentFile move(DocumentFile source, DocumentFile destination) throws Exception
+    {
+        if (source instanceof LocalDocumentFile && destination instanceof LocalDocumentFile) {
+            File target = new File(((LocalDocumentFile) destination).getFile(), source.getName());
+
+            if (!target.exists() && ((LocalDocumentFile) source).getFile().renameTo(target))
+                return DocumentFile.fromFile(target);
+        }
+
+        return run(source, destination, true);
+    }
+
+    /**
+     * @param maxConcurrency the number of the files that can be copied at the same time
+     */
+    public void setMaxConcurrency(int maxConcurrency)
+    {
+        mMaxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @param maxConcurrency the number of the files that can be read from or written to the same device at the same
+     *                       time
+     * @see #getDeviceKey(DocumentFile)
+     */
+    public void setMaxConcurrencyPerDevice(int maxConcurrency)
+    {
+        mMaxConcurrencyPerDevice = maxConcurrency;
+    }
+
+    /**
+     * @param options to copy each file with whose progress listener will receive the progress of all the files
+     */
+    public void setOptions(@NonNull CopyOptions options)
+    {
+        mOptions = options;
+    }
+
+    private DocumentFile run(DocumentFile source, DocumentFile destination, boolean move) throws Exception
+    {
+        if (!source.isDirectory())
+            throw new IOException(source.getName() + " is not a directory");
+
+        List<Entry> entryList = new ArrayList<>();
+        DocumentFile root = FileUtils.fetchDirectories(destination, source.getName());
+        long totalBytes = collect(source, root, entryList);
+
+        ProgressTracker tracker = ProgressTracker.from(mOptions, totalBytes);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(mMaxConcurrency,
+                entryList.size())));
+        List<Future<?>> futureList = new ArrayList<>(entryList.size());
+        TaskState state = new TaskState(tracker);
+
+        try {
+            for (Entry entry : entryList)
+                futureList.add(executor.submit(new CopyTask(entry, move, state)));
+
+            for (Future<?> future : futureList)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        if (state.error != null)
+            throw state.error;
+
+        if (mStoppable.isInterrupted())
+            throw new InterruptedException("The task was interrupted");
+
+        if (tracker != null)
+            tracker.finish();
+
+        if (move && !source.delete())
+            throw new IOException("Failed to delete " + source.getName() + " after moving its content");
+
+        return root;
+    }
+
+    /**
+     * Create the directories in the destination and list the files to be copied.
+     *
+     * @return the total size of the files
+     */
+    private long collect(DocumentFile directory, DocumentFile destination, List<Entry> entryList) throws Exception
+    {
+        DirectorySnapshot snapshot = destination.snapshot();
+        long totalBytes = 0;
+
+        for (DocumentFile file : directory.listFiles()) {
+            if (mStoppable.isInterrupted())
+                throw new InterruptedException("The task was interrupted");
+
+            if (file.isDirectory())
+                totalBytes += collect(file, FileUtils.fetchDirectory(snapshot, file.getName(), true), entryList);
+            else {
+                entryList.add(new Entry(file, snapshot));
+                totalBytes += file.length();
+            }
+        }
+
+        return totalBytes;
+    }
+
+    private List<Semaphore> acquireDevices(DocumentFile source, DocumentFile destination) throws InterruptedException
+    {
+        String sourceKey = getDeviceKey(source);
+        String destinationKey = getDeviceKey(destination);
+        List<Semaphore> semaphoreList = new ArrayList<>(2);
+
+        // always in the same order, so that two copies in opposite directions don't wait for each other forever
+        if (sourceKey.compareTo(destinationKey) > 0) {
+            String key = sourceKey;
+            sourceKey = destinationKey;
+            destinationKey = key;
+        }
+
+        try {
+            acquire(sourceKey, semaphoreList);
+
+            if (!sourceKey.equals(destinationKey))
+                acquire(destinationKey, semaphoreList);
+        } catch (InterruptedException e) {
+            release(semaphoreList);
+            throw e;
+        }
+
+        return semaphoreList;
+    }
+
+    private void acquire(String key, List<Semaphore> semaphoreList) throws InterruptedException
+    {
+        Semaphore semaphore;
+
+        synchronized (mDeviceSemaphoreMap) {
+            semaphore = mDeviceSemaphoreMap.get(key);
+
+            if (semaphore == null) {
+                semaphore = new Semaphore(Math.max(1, mMaxConcurrencyPerDevice));
+                mDeviceSemaphoreMap.put(key, semaphore);
+            }
+        }
+
+        while (!semaphore.tryAcquire(PERMIT_WAIT_INTERVAL, TimeUnit.MILLISECONDS))
+            if (mStoppable.isInterrupted())
+                throw new InterruptedException("The task was interrupted");
+
+        semaphoreList.add(semaphore);
+    }
+
+    private static void release(List<Semaphore> semaphoreList)
+    {
+        for (Semaphore semaphore : semaphoreList)
+            semaphore.release();
+    }
+
+    private static class Entry
+    {
+        final DocumentFile file;
+        final DirectorySnapshot destination;
+
+        /**
+         * @param file        to copy
+         * @param destination the snapshot of the directory to copy into, which is shared with the other files
+         */
+        Entry(DocumentFile file, DirectorySnapshot destination)
+        {
+            this.file = file;
+            this.destination = destination;
+        }
+    }
+
+    /**
+     * The state that is shared by the copies of a single run.
+     */
+    private static class TaskState
+    {
+        @Nullable
+        final ProgressTracker tracker;
+        volatile Exception error;
+
+        TaskState(@Nullable ProgressTracker tracker)
+        {
+            this.tracker = tracker;
+        }
+
+        synchronized void onTransferred(long bytes)
+        {
+            tracker.onTransferred(bytes);
+        }
+
+        synchronized void setError(Exception e)
+        {
+            if (error == null)
+                error = e;
+        }
+    }
+
+    private class CopyTask implements Runnable, CopyProgressListener
+    {
+        private final Entry mEntry;
+        private final boolean mMove;
+        private final TaskState mState;
+        private long mLastTransferredBytes;
+
+        CopyTask(Entry entry, boolean move, TaskState state)
+        {
+            mEntry = entry;
+            mMove = move;
+            mState = state;
+        }
+
+        @Override
+        public void onProgress(CopyProgress progress)
+        {
+            mState.onTransferred(progress.getTransferredBytes() - mLastTransferredBytes);
+            mLastTransferredBytes = progress.getTransferredBytes();
+        }
+
+        @Override
+        public void run()
+        {
+            if (mState.error != null || mStoppable.isInterrupted())
+                return;
+
+            List<Semaphore> semaphoreList = null;
+
+            try {
+                semaphoreList = acquireDevices(mEntry.file, mEntry.destination.getDirectory());
+
+                DocumentFile target;
+
+                // the snapshot isn't thread-safe, and two copies shouldn't create the same file
+                synchronized (mEntry.destination) {
+                    target = FileUtils.fetchFile(mEntry.destination, mEntry.file.getName(), true);
+                }
+
+                CopyOptions options = new CopyOptions(mOptions);
+
+                options.setProgressListener(mState.tracker == null ? null : this);
+
+                if (mMove) {
+                    if (!FileUtils.move(mContext, mEntry.file, target, mStoppable, mBufferLength, mSocketTimeout,
+                            options))
+                        throw new IOException("Failed to move " + mEntry.file.getName());
+                } else
+                    FileUtils.copy(mContext, mEntry.file, target, mStoppable, mBufferLength, mSocketTimeout,
+                            options);
+            } catch (Exception e) {
+                mState.setError(e);
+            } finally {
+                if (semaphoreList != null)
+                    release(semaphoreList);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import com.genonbeta.android.framework.util.StoppableImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DirectorySizeCacheTest
+{
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDirectory = File.createTempFile("DirectorySizeCacheTest", "");
+
+        if (!mDirectory.delete() || !mDirectory.mkdir())
+            throw new IOException("Could not create " + mDirectory);
+    }
+
+    @After
+    public void tearDown()
+    {
+        delete(mDirectory);
+    }
+
+    @Test
+    public void entriesAreSavedAndLoaded() throws IOException
+    {
+        File storeFile = new File(mDirectory, "store");
+        DirectorySizeCache cache = new DirectorySizeCache(storeFile);
+
+        cache.put(new DirectorySizeCache.Entry("/a", 1000, new String[]{"/a/b", "/a/c"},
+                new String[]{"one.txt", "two.txt"}));
+        cache.put(new DirectorySizeCache.Entry("/a/b", 2000, new String[0], new String[0]));
+        cache.save();
+
+        DirectorySizeCache loaded = new DirectorySizeCache(storeFile);
+        DirectorySizeCache.Entry entry = loaded.get("/a", 1000);
+
+        assertEquals(2, loaded.size());
+        assertNotNull(entry);
+        assertArrayEquals(new String[]{"/a/b", "/a/c"}, entry.directories);
+        assertArrayEquals(new String[]{"one.txt", "two.txt"}, entry.files);
+        assertNotNull(loaded.get("/a/b", 2000));
+        assertNull(loaded.get("/a", 1001));
+    }
+
+    @Test
+    public void otherVersionIsIgnored() throws IOException
+    {
+        File storeFile = new File(mDirectory, "store");
+        FileOutputStream outputStream = new FileOutputStream(storeFile);
+
+        try {
+            outputStream.write(new byte[]{0, 0, 0, 1, 0, 0, 0, 1});
+        } finally {
+            outputStream.close();
+        }
+
+        assertEquals(0, new DirectorySizeCache(storeFile).size());
+    }
+
+    @Test
+    public void invalidateRemovesTheSubdirectories()
+    {
+        DirectorySizeCache cache = new DirectorySizeCache(new File(mDirectory, "store"));
+
+        cache.put(new DirectorySizeCache.Entry("/a", 1000, new String[]{"/a/b"}, new String[0]));
+        cache.put(new DirectorySizeCache.Entry("/a/b", 1000, new String[]{"/a/b/c"}, new String[0]));
+        cache.put(new DirectorySizeCache.Entry("/a/b/c", 1000, new String[0], new String[0]));
+        cache.put(new DirectorySizeCache.Entry("/d", 1000, new String[0], new String[0]));
+
+        cache.invalidate("/a/b");
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("/a", 1000));
+        assertNull(cache.get("/a/b/c", 1000));
+    }
+
+    @Test
+    public void fileChangedInPlaceIsCountedWithItsNewLength() throws Exception
+    {
+        File tree = new File(mDirectory, "tree");
+        File subdirectory = new File(tree, "sub");
+        File file = new File(subdirectory, "file");
+
+        assertTrue(subdirectory.mkdirs());
+        write(new File(tree, "top"), 10, false);
+        write(file, 100, false);
+
+        DirectorySizeCache cache = new DirectorySizeCache(new File(mDirectory, "store"));
+        DirectorySizeCalculator calculator = new DirectorySizeCalculator(new StoppableImpl());
+        long lastModified = subdirectory.lastModified();
+
+        calculator.setCache(cache);
+
+        DirectorySizeCalculator.Result result = calculator.calculate(DocumentFile.fromFile(tree));
+
+        assertEquals(110, result.getLength());
+        assertEquals(2, result.getFileCount());
+        assertEquals(1, result.getDirectoryCount());
+        assertEquals(2, cache.size());
+
+        // writing to a file doesn't change the date of its directory
+        write(file, 50, true);
+        assertTrue(subdirectory.setLastModified(lastModified));
+        assertNotNull(cache.get(subdirectory.getPath(), subdirectory.lastModified()));
+
+        result = calculator.calculate(DocumentFile.fromFile(tree));
+
+        assertEquals(160, result.getLength());
+        assertEquals(2, result.getFileCount());
+        assertEquals(1, result.getDirectoryCount());
+    }
+
+    private static void write(File file, int length, boolean append) throws IOException
+    {
+        FileOutputStream outputStream = new FileOutputStream(file, append);
+
+        try {
+            outputStream.write(new byte[length]);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+
+        if (children != null)
+            for (File child : children)
+                delete(child);
+
+        file.delete();
+    }
+}
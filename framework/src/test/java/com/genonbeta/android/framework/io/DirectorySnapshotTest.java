@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DirectorySnapshotTest
+{
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDirectory = File.createTempFile("DirectorySnapshotTest", "");
+
+        if (!mDirectory.delete() || !mDirectory.mkdir())
+            throw new IOException("Could not create " + mDirectory);
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = mDirectory.listFiles();
+
+        if (files != null)
+            for (File file : files)
+                file.delete();
+
+        mDirectory.delete();
+    }
+
+    @Test
+    public void caseIsIgnoredOnlyWhenAskedFor() throws IOException
+    {
+        create("Photo.JPG");
+
+        DirectorySnapshot exact = new DirectorySnapshot(DocumentFile.fromFile(mDirectory));
+        DirectorySnapshot folded = new DirectorySnapshot(DocumentFile.fromFile(mDirectory), true);
+
+        assertFalse(exact.isIgnoringCase());
+        assertTrue(exact.contains("Photo.JPG"));
+        assertFalse(exact.contains("photo.jpg"));
+
+        assertTrue(folded.isIgnoringCase());
+        assertTrue(folded.contains("photo.jpg"));
+        assertTrue(folded.contains("PHOTO.jpg"));
+        assertFalse(folded.contains("photo.png"));
+    }
+
+    @Test
+    public void findFileLooksForTheExactName() throws IOException
+    {
+        create("Photo.JPG");
+
+        DirectorySnapshot snapshot = new DirectorySnapshot(DocumentFile.fromFile(mDirectory), true);
+
+        assertNotNull(snapshot.findFile("Photo.JPG"));
+        assertNull(snapshot.findFile("photo.jpg"));
+    }
+
+    @Test
+    public void otherCaseVariantKeepsTheNameTaken() throws IOException
+    {
+        create("a.txt");
+        create("A.txt");
+
+        DirectorySnapshot snapshot = new DirectorySnapshot(DocumentFile.fromFile(mDirectory), true);
+
+        assertEquals(2, snapshot.size());
+
+        snapshot.remove("a.txt");
+        assertTrue(snapshot.contains("a.txt"));
+
+        snapshot.remove("A.txt");
+        assertFalse(snapshot.contains("a.txt"));
+        assertEquals(0, snapshot.size());
+    }
+
+    @Test
+    public void addedFilesAreCountedOnce() throws IOException
+    {
+        DirectorySnapshot snapshot = new DirectorySnapshot(DocumentFile.fromFile(mDirectory), true);
+        DocumentFile file = DocumentFile.fromFile(create("Notes.txt"));
+
+        snapshot.add(file);
+        snapshot.add(file);
+        snapshot.add(DocumentFile.fromFile(create("notes.TXT")));
+
+        assertTrue(snapshot.contains("NOTES.txt"));
+
+        snapshot.remove("Notes.txt");
+        assertTrue(snapshot.contains("NOTES.txt"));
+
+        snapshot.remove("notes.TXT");
+        assertFalse(snapshot.contains("NOTES.txt"));
+    }
+
+    @Test
+    public void removingAnUnknownNameKeepsTheOthers() throws IOException
+    {
+        create("Report.pdf");
+
+        DirectorySnapshot snapshot = new DirectorySnapshot(DocumentFile.fromFile(mDirectory), true);
+
+        snapshot.remove("report.pdf");
+
+        assertTrue(snapshot.contains("report.pdf"));
+        assertNotNull(snapshot.findFile("Report.pdf"));
+    }
+
+    private File create(String name) throws IOException
+    {
+        File file = new File(mDirectory, name);
+
+        if (!file.createNewFile())
+            throw new IOException("Could not create " + file);
+
+        return file;
+    }
+}
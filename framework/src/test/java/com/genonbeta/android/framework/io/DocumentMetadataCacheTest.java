@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DocumentMetadataCacheTest
+{
+    @Test
+    public void invalidateDropsTheParentListing()
+    {
+        DocumentMetadataCache cache = new DocumentMetadataCache(100, 60000);
+
+        cache.putChildren("dir", createChildren("dir", 3));
+        cache.invalidate("dir-1");
+
+        assertNull(cache.get("dir-1"));
+        assertNull(cache.getChildren("dir"));
+        assertNotNull(cache.get("dir-0"));
+    }
+
+    @Test
+    public void invalidateFindsTheListingWithoutTheParentKey()
+    {
+        DocumentMetadataCache cache = new DocumentMetadataCache(5, 60000);
+
+        cache.putChildren("dir", createChildren("dir", 3));
+
+        // push the last child out of the entries alone, so that its parent is no longer known
+        assertNotNull(cache.get("dir-0"));
+        assertNotNull(cache.get("dir-1"));
+
+        for (DocumentMetadataCache.Entry entry : createChildren("other", 3))
+            cache.put(entry);
+
+        assertNull(cache.get("dir-2"));
+        assertNotNull(cache.getChildren("dir"));
+
+        cache.invalidate("dir-2");
+
+        assertNull(cache.getChildren("dir"));
+    }
+
+    @Test
+    public void listingsAreBoundByTheirChildren()
+    {
+        DocumentMetadataCache cache = new DocumentMetadataCache(10, 60000);
+
+        cache.putChildren("first", createChildren("first", 4));
+        cache.putChildren("second", createChildren("second", 4));
+
+        // reading makes the first one the recently used one
+        assertNotNull(cache.getChildren("first"));
+
+        cache.putChildren("third", createChildren("third", 4));
+
+        assertNotNull(cache.getChildren("first"));
+        assertNull(cache.getChildren("second"));
+        assertNotNull(cache.getChildren("third"));
+    }
+
+    @Test
+    public void listingLargerThanTheCacheIsNotKept()
+    {
+        DocumentMetadataCache cache = new DocumentMetadataCache(10, 60000);
+
+        cache.putChildren("small", createChildren("small", 2));
+        cache.putChildren("large", createChildren("large", 11));
+
+        assertNull(cache.getChildren("large"));
+        assertNotNull(cache.getChildren("small"));
+    }
+
+    @Test
+    public void replacedListingIsCountedOnce()
+    {
+        DocumentMetadataCache cache = new DocumentMetadataCache(10, 60000);
+
+        for (int i = 0; i < 5; i++)
+            cache.putChildren("dir", createChildren("dir", 6));
+
+        cache.putChildren("other", createChildren("other", 4));
+
+        assertEquals(6, cache.getChildren("dir").size());
+        assertEquals(4, cache.getChildren("other").size());
+    }
+
+    @Test
+    public void expiredEntriesAreForgotten() throws Exception
+    {
+        DocumentMetadataCache cache = new DocumentMetadataCache(10, 60000);
+
+        cache.putChildren("dir", createChildren("dir", 2));
+        cache.setTimeToLive(0);
+        Thread.sleep(5);
+
+        assertNull(cache.get("dir-0"));
+        assertNull(cache.getChildren("dir"));
+    }
+
+    private static List<DocumentMetadataCache.Entry> createChildren(String parentKey, int count)
+    {
+        List<DocumentMetadataCache.Entry> children = new ArrayList<>();
+
+        for (int i = 0; i < count; i++)
+            children.add(new DocumentMetadataCache.Entry(parentKey + "-" + i, parentKey, String.valueOf(i),
+                    "file" + i, i, "text/plain", 0, 0));
+
+        return children;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.io;
+
+import com.genonbeta.android.framework.util.StoppableImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TreeDeleterTest
+{
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDirectory = File.createTempFile("TreeDeleterTest", "");
+
+        if (!mDirectory.delete() || !mDirectory.mkdir())
+            throw new IOException("Could not create " + mDirectory);
+    }
+
+    @After
+    public void tearDown()
+    {
+        delete(mDirectory);
+    }
+
+    @Test
+    public void treeIsDeleted() throws Exception
+    {
+        File tree = createTree();
+
+        assertTrue(new TreeDeleter(new StoppableImpl()).delete(tree));
+        assertFalse(tree.exists());
+    }
+
+    @Test
+    public void treeIsDeletedOnTheCallingThread() throws Exception
+    {
+        File tree = createTree();
+        TreeDeleter deleter = new TreeDeleter(new StoppableImpl());
+
+        deleter.setParallelism(1);
+
+        assertTrue(deleter.delete(DocumentFile.fromFile(tree)));
+        assertFalse(tree.exists());
+    }
+
+    @Test
+    public void progressCountsEverything() throws Exception
+    {
+        File tree = createTree();
+        final AtomicLong lastDeletedCount = new AtomicLong();
+        TreeDeleter deleter = new TreeDeleter(new StoppableImpl());
+
+        deleter.setProgressListener(new TreeDeleter.ProgressListener()
+        {
+            @Override
+            public void onProgress(long deletedCount, long failedCount)
+            {
+                lastDeletedCount.set(deletedCount);
+            }
+        });
+        deleter.delete(tree);
+
+        // the root, 3 directories with 100 files each, and one empty directory
+        assertEquals(1 + 3 * 101 + 1, lastDeletedCount.get());
+    }
+
+    @Test
+    public void linkedDirectoryIsLeftAlone() throws Exception
+    {
+        File tree = createTree();
+        File outside = new File(mDirectory, "outside");
+        File kept = new File(outside, "kept");
+
+        assertTrue(outside.mkdir());
+        assertTrue(kept.createNewFile());
+        Files.createSymbolicLink(new File(tree, "link").toPath(), outside.toPath());
+
+        assertTrue(DocumentFile.fromFile(tree).delete());
+        assertFalse(tree.exists());
+        assertTrue(kept.exists());
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void stoppedTaskThrows() throws Exception
+    {
+        StoppableImpl stoppable = new StoppableImpl();
+
+        stoppable.interrupt();
+        new TreeDeleter(stoppable).delete(createTree());
+    }
+
+    private File createTree() throws IOException
+    {
+        File tree = new File(mDirectory, "tree");
+
+        for (int i = 0; i < 3; i++) {
+            File directory = new File(tree, "dir" + i);
+
+            if (!directory.mkdirs())
+                throw new IOException("Could not create " + directory);
+
+            for (int j = 0; j < 100; j++)
+                if (!new File(directory, "file" + j).createNewFile())
+                    throw new IOException("Could not create the files in " + directory);
+        }
+
+        if (!new File(tree, "empty").mkdir())
+            throw new IOException("Could not create the empty directory");
+
+        return tree;
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.isDirectory() && !Files.isSymbolicLink(file.toPath()) ? file.listFiles() : null;
+
+        if (children != null)
+            for (File child : children)
+                delete(child);
+
+        file.delete();
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import com.genonbeta.android.framework.io.DocumentFile;
+import com.genonbeta.android.framework.util.copy.CopyDigest;
+import com.genonbeta.android.framework.util.copy.CopyOptions;
+import com.genonbeta.android.framework.util.copy.CopyProgress;
+import com.genonbeta.android.framework.util.copy.CopyProgressListener;
+import com.genonbeta.android.framework.util.copy.CopyResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileUtilsTest
+{
+    private static final int BUFFER_LENGTH = 8192;
+    private static final int TIMEOUT = 10000;
+
+    // the local files are copied without a content resolver
+    private final Context mContext = new ContextWrapper(null);
+    private final Stoppable mStoppable = new StoppableImpl();
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDirectory = File.createTempFile("FileUtilsTest", "");
+
+        if (!mDirectory.delete() || !mDirectory.mkdir())
+            throw new IOException("Could not create " + mDirectory);
+    }
+
+    @After
+    public void tearDown()
+    {
+        delete(mDirectory);
+    }
+
+    @Test
+    public void localFilesAreCopiedThroughChannels() throws Exception
+    {
+        byte[] content = createContent(3 * BUFFER_LENGTH + 17);
+        File source = write("source", content);
+        File destination = new File(mDirectory, "destination");
+
+        CopyResult result = FileUtils.copy(mContext, DocumentFile.fromFile(source),
+                DocumentFile.fromFile(destination), mStoppable, BUFFER_LENGTH, TIMEOUT, new CopyOptions());
+
+        assertEquals(content.length, result.getLength());
+        assertEquals(0, result.getSkippedBytes());
+        assertArrayEquals(content, read(destination));
+    }
+
+    @Test
+    public void longerDestinationIsTruncated() throws Exception
+    {
+        byte[] content = createContent(100);
+        File source = write("source", content);
+        File destination = write("destination", createContent(1000));
+
+        FileUtils.copy(mContext, DocumentFile.fromFile(source), DocumentFile.fromFile(destination), mStoppable,
+                BUFFER_LENGTH, TIMEOUT);
+
+        assertArrayEquals(content, read(destination));
+    }
+
+    @Test
+    public void emptyFileIsCopied() throws Exception
+    {
+        File source = write("source", new byte[0]);
+        File destination = new File(mDirectory, "destination");
+
+        FileUtils.copy(mContext, DocumentFile.fromFile(source), DocumentFile.fromFile(destination), mStoppable,
+                BUFFER_LENGTH, TIMEOUT);
+
+        assertEquals(0, destination.length());
+    }
+
+    @Test
+    public void copyResumesFromTheExistingPart() throws Exception
+    {
+        byte[] content = createContent(10000);
+        File source = write("source", content);
+        File destination = write("destination", Arrays.copyOf(content, 4000));
+        CopyOptions options = new CopyOptions();
+
+        options.setResumable(true);
+
+        CopyResult result = FileUtils.copy(mContext, DocumentFile.fromFile(source),
+                DocumentFile.fromFile(destination), mStoppable, BUFFER_LENGTH, TIMEOUT, options);
+
+        assertEquals(4000, result.getSkippedBytes());
+        assertEquals(content.length, result.getLength());
+        assertArrayEquals(content, read(destination));
+    }
+
+    @Test
+    public void copyStartsOverWhenTheExistingPartDiffers() throws Exception
+    {
+        byte[] content = createContent(10000);
+        byte[] existing = Arrays.copyOf(content, 4000);
+        File source = write("source", content);
+
+        existing[existing.length - 1]++;
+
+        File destination = write("destination", existing);
+        CopyOptions options = new CopyOptions();
+
+        options.setResumable(true);
+        options.setVerifyWindow(1024);
+
+        CopyResult result = FileUtils.copy(mContext, DocumentFile.fromFile(source),
+                DocumentFile.fromFile(destination), mStoppable, BUFFER_LENGTH, TIMEOUT, options);
+
+        assertEquals(0, result.getSkippedBytes());
+        assertArrayEquals(content, read(destination));
+    }
+
+    @Test
+    public void completeDestinationIsNotCopiedAgain() throws Exception
+    {
+        byte[] content = createContent(3000);
+        File source = write("source", content);
+        File destination = write("destination", content);
+        CopyOptions options = new CopyOptions();
+
+        options.setResumable(true);
+
+        CopyResult result = FileUtils.copy(mContext, DocumentFile.fromFile(source),
+                DocumentFile.fromFile(destination), mStoppable, BUFFER_LENGTH, TIMEOUT, options);
+
+        assertEquals(content.length, result.getSkippedBytes());
+        assertArrayEquals(content, read(destination));
+    }
+
+    @Test
+    public void digestIsComputedWhileCopying() throws Exception
+    {
+        byte[] content = createContent(50000);
+        File source = write("source", content);
+        File destination = new File(mDirectory, "destination");
+        CopyOptions options = new CopyOptions();
+
+        options.setDigestAlgorithm(CopyDigest.SHA_256);
+
+        CopyResult result = FileUtils.copy(mContext, DocumentFile.fromFile(source),
+                DocumentFile.fromFile(destination), mStoppable, BUFFER_LENGTH, TIMEOUT, options);
+
+        assertEquals(CopyDigest.SHA_256, result.getDigestAlgorithm());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), result.getDigest());
+        assertArrayEquals(content, read(destination));
+    }
+
+    @Test
+    public void resumedDigestCoversTheWholeFile() throws Exception
+    {
+        byte[] content = createContent(50000);
+        File source = write("source", content);
+        File destination = write("destination", Arrays.copyOf(content, 20000));
+        CopyOptions options = new CopyOptions();
+
+        options.setResumable(true);
+        options.setDigestAlgorithm(CopyDigest.MD5);
+
+        CopyResult result = FileUtils.copy(mContext, DocumentFile.fromFile(source),
+                DocumentFile.fromFile(destination), mStoppable, BUFFER_LENGTH, TIMEOUT, options);
+
+        assertEquals(20000, result.getSkippedBytes());
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(content), result.getDigest());
+    }
+
+    @Test
+    public void progressIsReportedUntilFinished() throws Exception
+    {
+        byte[] content = createContent(5000);
+        File source = write("source", content);
+        final List<CopyProgress> progressList = new ArrayList<>();
+        CopyOptions options = new CopyOptions();
+
+        options.setProgressInterval(0);
+        options.setProgressListener(new CopyProgressListener()
+        {
+            @Override
+            public void onProgress(CopyProgress progress)
+            {
+                progressList.add(progress);
+            }
+        });
+
+        FileUtils.copy(mContext, DocumentFile.fromFile(source),
+                DocumentFile.fromFile(new File(mDirectory, "destination")), mStoppable, 1024, TIMEOUT, options);
+
+        CopyProgress lastProgress = progressList.get(progressList.size() - 1);
+        assertTrue(lastProgress.isFinished());
+        assertEquals(content.length, lastProgress.getTotalBytes());
+        assertEquals(content.length, lastProgress.getTransferredBytes());
+    }
+
+    private static byte[] createContent(int length)
+    {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+
+        if (children != null)
+            for (File child : children)
+                delete(child);
+
+        file.delete();
+    }
+
+    private static byte[] read(File file) throws IOException
+    {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+            byte[] content = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(content);
+            return content;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private File write(String name, byte[] content) throws IOException
+    {
+        File file = new File(mDirectory, name);
+        FileOutputStream outputStream = new FileOutputStream(file);
+
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.genonbeta.android.framework.object.Selectable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncPerformerEngineTest
+{
+    private final ManualExecutor mExecutor = new ManualExecutor();
+    private final List<Selectable> mInformedList = new ArrayList<>();
+    private final List<Integer> mInformedCountList = new ArrayList<>();
+    private AsyncPerformerEngine mEngine;
+    private EngineConnection<TestSelectable> mConnection;
+    private List<TestSelectable> mAvailableList;
+
+    @Before
+    public void setUp()
+    {
+        mEngine = new AsyncPerformerEngine(mExecutor);
+        mAvailableList = TestSelectable.createList(3);
+        mConnection = new EngineConnection<>(new PerformerEngineProvider()
+        {
+            @Nullable
+            @Override
+            public IPerformerEngine getPerformerEngine()
+            {
+                return mEngine;
+            }
+        });
+        mConnection.setSelectableProvider(new SelectableProvider<TestSelectable>()
+        {
+            @Override
+            public List<TestSelectable> getSelectableList()
+            {
+                return mAvailableList;
+            }
+        });
+        mEngine.ensureSlot(mConnection.getEngineProvider(), mConnection);
+        mEngine.addPerformerListener(new PerformerListener()
+        {
+            @Override
+            public void onSelected(IPerformerEngine engine, IBaseEngineConnection owner, Selectable selectable,
+                                   boolean isSelected, int position)
+            {
+                mInformedList.add(selectable);
+                mInformedCountList.add(mEngine.getSelectionCount());
+            }
+
+            @Override
+            public void onSelected(IPerformerEngine engine, IBaseEngineConnection owner,
+                                   List<? extends Selectable> selectableList, boolean isSelected, int[] positions)
+            {
+                mInformedList.addAll(selectableList);
+                mInformedCountList.add(mEngine.getSelectionCount());
+            }
+        });
+    }
+
+    @Test
+    public void asyncCallRunsOnExecutor() throws Exception
+    {
+        Future<Boolean> future = mEngine.setSelectedAsync(mConnection, mAvailableList.get(1), 1, true);
+
+        assertFalse(future.isDone());
+        assertFalse(mAvailableList.get(1).isSelectableSelected());
+
+        mExecutor.runAll();
+
+        assertTrue(future.get());
+        assertTrue(mAvailableList.get(1).isSelectableSelected());
+        assertEquals(1, mEngine.getSelectionCount());
+        assertEquals(1, mInformedList.size());
+        assertSame(mAvailableList.get(1), mInformedList.get(0));
+    }
+
+    @Test
+    public void callOnBusyConnectionIsQueued()
+    {
+        mEngine.setSelectedAsync(mConnection, mAvailableList.get(0), 0, true);
+
+        // the connection has a task waiting, so this should not be applied right away, nor throw
+        assertFalse(mConnection.setSelected(mAvailableList.get(2), 2, true));
+        assertFalse(mConnection.setSelected(Arrays.asList(mAvailableList.get(1)), new int[]{1}, true));
+        assertFalse(mAvailableList.get(2).isSelectableSelected());
+        assertTrue(mInformedList.isEmpty());
+
+        mExecutor.runAll();
+
+        assertEquals(Arrays.asList(mAvailableList.get(0), mAvailableList.get(2), mAvailableList.get(1)),
+                mInformedList);
+        assertEquals(Arrays.asList(1, 2, 3), mInformedCountList);
+        assertEquals(3, mEngine.getSelectionCount());
+    }
+
+    @Test
+    public void callOnIdleConnectionIsApplied()
+    {
+        mEngine.setSelectedAsync(mConnection, mAvailableList.get(0), 0, true);
+        mExecutor.runAll();
+
+        assertTrue(mConnection.setSelected(mAvailableList.get(2), 2, true));
+        assertTrue(mAvailableList.get(2).isSelectableSelected());
+        assertEquals(2, mEngine.getSelectionCount());
+    }
+
+    @Test
+    public void submittedBatchInformsOnce() throws Exception
+    {
+        Future<Void> future = mEngine.submit(mConnection, new Callable<Void>()
+        {
+            @Override
+            public Void call()
+            {
+                mConnection.beginBatch();
+
+                for (int i = 0; i < mAvailableList.size(); i++)
+                    mConnection.setSelected(mAvailableList.get(i), i, true);
+
+                mConnection.commit();
+                return null;
+            }
+        });
+
+        mExecutor.runAll();
+        future.get();
+
+        assertEquals(mAvailableList, mInformedList);
+        assertEquals(Arrays.asList(3), mInformedCountList);
+    }
+
+    /**
+     * Keeps the tasks until they are run by the test, so that the connection stays busy in between.
+     */
+    private static class ManualExecutor implements Executor
+    {
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(@NonNull Runnable runnable)
+        {
+            mTasks.offer(runnable);
+        }
+
+        void runAll()
+        {
+            Runnable runnable;
+
+            while ((runnable = mTasks.poll()) != null)
+                runnable.run();
+        }
+    }
+}
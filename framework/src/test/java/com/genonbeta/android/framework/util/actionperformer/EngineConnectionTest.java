@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import androidx.annotation.Nullable;
+import com.genonbeta.android.framework.object.Selectable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static androidx.recyclerview.widget.RecyclerView.NO_POSITION;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EngineConnectionTest
+{
+    private final List<Call> mCallList = new ArrayList<>();
+    private PerformerEngine mEngine;
+    private PerformerEngineProvider mEngineProvider;
+    private List<TestSelectable> mAvailableList;
+    private final SelectableProvider<TestSelectable> mSelectableProvider = new SelectableProvider<TestSelectable>()
+    {
+        @Override
+        public List<TestSelectable> getSelectableList()
+        {
+            return mAvailableList;
+        }
+    };
+
+    @Before
+    public void setUp()
+    {
+        mEngine = new PerformerEngine();
+        mEngineProvider = new PerformerEngineProvider()
+        {
+            @Nullable
+            @Override
+            public IPerformerEngine getPerformerEngine()
+            {
+                return mEngine;
+            }
+        };
+        mEngine.addPerformerListener(new PerformerListener()
+        {
+            @Override
+            public void onSelected(IPerformerEngine engine, IBaseEngineConnection owner, Selectable selectable,
+                                   boolean isSelected, int position)
+            {
+                mCallList.add(new Call(Collections.singletonList(selectable), isSelected, new int[]{position}));
+            }
+
+            @Override
+            public void onSelected(IPerformerEngine engine, IBaseEngineConnection owner,
+                                   List<? extends Selectable> selectableList, boolean isSelected, int[] positions)
+            {
+                mCallList.add(new Call(new ArrayList<>(selectableList), isSelected, positions.clone()));
+            }
+        });
+        mAvailableList = TestSelectable.createList(5);
+    }
+
+    @Test
+    public void reconcileReportsReplacedInstances()
+    {
+        EngineConnection<TestSelectable> connection = createConnection(new EngineConnection<TestSelectable>(
+                mEngineProvider));
+        List<TestSelectable> oldList = mAvailableList;
+
+        select(connection, 1, 3);
+        mAvailableList = TestSelectable.createList(5);
+        connection.reconcileSelection();
+
+        assertEquals(2, mCallList.size());
+        mCallList.get(0).verify(false, Arrays.asList(oldList.get(1), oldList.get(3)), NO_POSITION, NO_POSITION);
+        mCallList.get(1).verify(true, Arrays.asList(mAvailableList.get(1), mAvailableList.get(3)), 1, 3);
+
+        assertFalse(oldList.get(1).isSelectableSelected());
+        assertFalse(oldList.get(3).isSelectableSelected());
+        assertTrue(mAvailableList.get(1).isSelectableSelected());
+        assertTrue(mAvailableList.get(3).isSelectableSelected());
+        assertEquals(Arrays.asList(mAvailableList.get(1), mAvailableList.get(3)), connection.getSelectedItemList());
+        assertEquals(2, mEngine.getSelectionCount());
+    }
+
+    @Test
+    public void reconcileFindsMovedAndMissingIds()
+    {
+        EngineConnection<TestSelectable> connection = createConnection(new EngineConnection<TestSelectable>(
+                mEngineProvider));
+        List<TestSelectable> oldList = mAvailableList;
+
+        select(connection, 1, 3);
+        mAvailableList = Arrays.asList(new TestSelectable(9), new TestSelectable(8), new TestSelectable(3));
+        connection.reconcileSelection();
+
+        assertEquals(2, mCallList.size());
+        mCallList.get(0).verify(false, Arrays.asList(oldList.get(1), oldList.get(3)), NO_POSITION, NO_POSITION);
+        mCallList.get(1).verify(true, Collections.singletonList(mAvailableList.get(2)), 2);
+
+        assertEquals(Collections.singletonList(mAvailableList.get(2)), connection.getSelectedItemList());
+        assertEquals(1, mEngine.getSelectionCount());
+    }
+
+    @Test
+    public void reconcileReportsNothingWhenInstancesStay()
+    {
+        EngineConnection<TestSelectable> connection = createConnection(new EngineConnection<TestSelectable>(
+                mEngineProvider));
+
+        select(connection, 1, 3);
+        connection.reconcileSelection();
+
+        assertTrue(mCallList.isEmpty());
+        assertEquals(Arrays.asList(mAvailableList.get(1), mAvailableList.get(3)), connection.getSelectedItemList());
+        assertEquals(2, mEngine.getSelectionCount());
+    }
+
+    @Test
+    public void reconcileKeepsSharedInstancesOnPartialReload()
+    {
+        EngineConnection<TestSelectable> connection = createConnection(new EngineConnection<TestSelectable>(
+                mEngineProvider));
+        List<TestSelectable> oldList = mAvailableList;
+
+        select(connection, 1, 3);
+        mAvailableList = new ArrayList<>(oldList);
+        mAvailableList.set(3, new TestSelectable(3));
+        connection.reconcileSelection();
+
+        assertEquals(2, mCallList.size());
+        mCallList.get(0).verify(false, Collections.singletonList(oldList.get(3)), NO_POSITION);
+        mCallList.get(1).verify(true, Collections.singletonList(mAvailableList.get(3)), 3);
+        assertEquals(2, mEngine.getSelectionCount());
+    }
+
+    @Test
+    public void reconcileSelectsNewInstancesOnPositionalConnection()
+    {
+        PositionalEngineConnection<TestSelectable> connection = createConnection(
+                new PositionalEngineConnection<TestSelectable>(mEngineProvider));
+
+        select(connection, 1, 3);
+        mAvailableList = Arrays.asList(new TestSelectable(3), new TestSelectable(7), new TestSelectable(1),
+                new TestSelectable(8));
+        connection.reconcileSelection();
+
+        assertEquals(Arrays.asList(mAvailableList.get(0), mAvailableList.get(2)), connection.getSelectedItemList());
+        assertArrayEquals(new int[]{0, 2}, connection.getSelectedPositions());
+        assertTrue(mAvailableList.get(0).isSelectableSelected());
+        assertFalse(mAvailableList.get(1).isSelectableSelected());
+        assertTrue(mAvailableList.get(2).isSelectableSelected());
+        assertEquals(2, connection.getSelectedItemCount());
+        assertEquals(2, mEngine.getSelectionCount());
+
+        for (Call call : mCallList)
+            assertFalse(call.selectableList.isEmpty());
+    }
+
+    @Test
+    public void reconcileReportsOldInstancesOnPositionalConnection()
+    {
+        PositionalEngineConnection<TestSelectable> connection = createConnection(
+                new PositionalEngineConnection<TestSelectable>(mEngineProvider));
+        List<TestSelectable> oldList = mAvailableList;
+
+        select(connection, 1, 3);
+        mAvailableList = Arrays.asList(new TestSelectable(3), new TestSelectable(7), new TestSelectable(8));
+        connection.reconcileSelection();
+
+        assertEquals(2, mCallList.size());
+        mCallList.get(0).verify(false, Arrays.asList(oldList.get(1), oldList.get(3)), NO_POSITION, NO_POSITION);
+        mCallList.get(1).verify(true, Collections.singletonList(mAvailableList.get(0)), 0);
+        assertFalse(oldList.get(1).isSelectableSelected());
+        assertFalse(oldList.get(3).isSelectableSelected());
+    }
+
+    @Test
+    public void hostChangedDirectlyIsSeen()
+    {
+        EngineConnection<TestSelectable> connection = createConnection(new EngineConnection<TestSelectable>(
+                mEngineProvider));
+
+        select(connection, 1);
+        connection.getSelectedItemList().add(mAvailableList.get(2));
+        connection.getSelectedItemList().remove(mAvailableList.get(1));
+
+        assertFalse(connection.isSelectedOnHost(mAvailableList.get(1)));
+        assertTrue(connection.isSelectedOnHost(mAvailableList.get(2)));
+    }
+
+    @Test
+    public void sameIdIsNotSelectedOnHost()
+    {
+        EngineConnection<TestSelectable> connection = createConnection(new EngineConnection<TestSelectable>(
+                mEngineProvider));
+
+        select(connection, 1);
+
+        assertTrue(connection.isSelectedOnHost(mAvailableList.get(1)));
+        assertFalse(connection.isSelectedOnHost(new TestSelectable(1)));
+    }
+
+    @Test
+    public void batchHoldsChangesUntilCommit()
+    {
+        EngineConnection<TestSelectable> connection = createConnection(new EngineConnection<TestSelectable>(
+                mEngineProvider));
+
+        connection.beginBatch();
+        connection.setSelected(mAvailableList.get(0), 0, true);
+        connection.setSelected(mAvailableList.get(2), 2, true);
+        connection.setSelected(mAvailableList.get(4), 4, true);
+        connection.setSelected(mAvailableList.get(2), 2, false);
+
+        assertTrue(connection.isInBatch());
+        assertTrue(mCallList.isEmpty());
+
+        connection.commit();
+
+        assertFalse(connection.isInBatch());
+        assertEquals(1, mCallList.size());
+        mCallList.get(0).verify(true, Arrays.asList(mAvailableList.get(0), mAvailableList.get(4)), 0, 4);
+        assertEquals(2, mEngine.getSelectionCount());
+    }
+
+    @Test
+    public void batchReportsSelectedAndDeselectedSeparately()
+    {
+        EngineConnection<TestSelectable> connection = createConnection(new EngineConnection<TestSelectable>(
+                mEngineProvider));
+
+        select(connection, 1, 3);
+        connection.beginBatch();
+        connection.setSelected(Arrays.asList(mAvailableList.get(0), mAvailableList.get(1)), new int[]{0, 1}, true);
+        connection.setSelected(mAvailableList.get(3), 3, false);
+        connection.commit();
+
+        assertEquals(2, mCallList.size());
+        mCallList.get(0).verify(true, Collections.singletonList(mAvailableList.get(0)), 0);
+        mCallList.get(1).verify(false, Collections.singletonList(mAvailableList.get(3)), 3);
+        assertEquals(2, mEngine.getSelectionCount());
+    }
+
+    @Test
+    public void nestedBatchInformsOnOutermostCommit()
+    {
+        EngineConnection<TestSelectable> connection = createConnection(new EngineConnection<TestSelectable>(
+                mEngineProvider));
+
+        connection.beginBatch();
+        connection.beginBatch();
+        connection.setSelected(mAvailableList.get(1), 1, true);
+        connection.commit();
+
+        assertTrue(mCallList.isEmpty());
+
+        connection.commit();
+
+        assertEquals(1, mCallList.size());
+        mCallList.get(0).verify(true, Collections.singletonList(mAvailableList.get(1)), 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitWithoutBatchThrows()
+    {
+        createConnection(new EngineConnection<TestSelectable>(mEngineProvider)).commit();
+    }
+
+    private <T extends EngineConnection<TestSelectable>> T createConnection(T connection)
+    {
+        connection.setSelectableProvider(mSelectableProvider);
+        mEngine.ensureSlot(mEngineProvider, connection);
+        return connection;
+    }
+
+    private void select(EngineConnection<TestSelectable> connection, int... positions)
+    {
+        for (int position : positions)
+            assertTrue(connection.setSelected(mAvailableList.get(position), position, true));
+
+        mCallList.clear();
+    }
+
+    private static class Call
+    {
+        final List<? extends Selectable> selectableList;
+        final boolean selected;
+        final int[] positions;
+
+        Call(List<? extends Selectable> selectableList, boolean selected, int[] positions)
+        {
+            this.selectableList = selectableList;
+            this.selected = selected;
+            this.positions = positions;
+        }
+
+        void verify(boolean selected, List<? extends Selectable> selectableList, int... positions)
+        {
+            assertEquals(selected, this.selected);
+            assertEquals(selectableList.size(), this.selectableList.size());
+
+            for (int i = 0; i < selectableList.size(); i++)
+                assertSame(selectableList.get(i), this.selectableList.get(i));
+
+            assertArrayEquals(positions, this.positions);
+        }
+    }
+}
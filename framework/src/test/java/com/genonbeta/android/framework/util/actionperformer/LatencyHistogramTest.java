@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest
+{
+    @Test
+    public void valuesGoToTheBucketOfTheirHighestBit()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+        histogram.record(4);
+        histogram.record(-5);
+
+        assertEquals(2, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(1));
+        assertEquals(2, histogram.getBucketCount(2));
+        assertEquals(1, histogram.getBucketCount(3));
+        assertEquals(6, histogram.getCount());
+        assertEquals(10, histogram.getSum());
+        assertEquals(4, histogram.getMax());
+    }
+
+    @Test
+    public void largestValueIsRecorded()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(1, histogram.getBucketCount(LatencyHistogram.BUCKET_COUNT - 1));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentileIsTheUpperBoundOfItsBucket()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 0; i < 99; i++)
+            histogram.record(100);
+
+        histogram.record(5000);
+
+        assertEquals(127, histogram.getPercentile(50));
+        assertEquals(127, histogram.getPercentile(99));
+        // capped by the largest value rather than the bucket bound of 8191
+        assertEquals(5000, histogram.getPercentile(100));
+        assertEquals(149, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void emptyHistogramReportsZero()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void resetForgetsValues()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getBucketCount(6));
+    }
+
+    @Test
+    public void recordsFromManyThreads() throws InterruptedException
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int offset = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 1000; j++)
+                        histogram.record(j + offset);
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(4000, histogram.getCount());
+        assertEquals(1002, histogram.getMax());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import androidx.annotation.Nullable;
+import com.genonbeta.android.framework.object.Selectable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+public class PerformerMetricsTest
+{
+    private final PerformerMetrics mMetrics = new PerformerMetrics(-1);
+    private PerformerEngine mEngine;
+    private EngineConnection<TestSelectable> mConnection;
+    private List<TestSelectable> mAvailableList;
+
+    @Before
+    public void setUp()
+    {
+        mEngine = new PerformerEngine();
+        mEngine.setMetricsListener(mMetrics);
+        mAvailableList = TestSelectable.createList(4);
+        mConnection = new EngineConnection<>(new PerformerEngineProvider()
+        {
+            @Nullable
+            @Override
+            public IPerformerEngine getPerformerEngine()
+            {
+                return mEngine;
+            }
+        });
+        mEngine.ensureSlot(mConnection.getEngineProvider(), mConnection);
+        mEngine.addPerformerListener(new RecordingListener());
+        mEngine.addPerformerCallback(new RejectingCallback());
+    }
+
+    @Test
+    public void callsAreCountedPerType()
+    {
+        mConnection.setSelected(mAvailableList.get(0), 0, true);
+        mConnection.setSelected(mAvailableList.get(3), 3, true);
+        mConnection.setSelected(Arrays.asList(mAvailableList.get(1), mAvailableList.get(2)), new int[]{1, 2}, true);
+
+        assertEquals(3, mMetrics.getCallbackCount());
+        assertEquals(1, mMetrics.getRejectionCount());
+        assertEquals(2, mMetrics.getListenerCount());
+        assertEquals(0, mMetrics.getSlowCallCount());
+
+        LatencyHistogram callbackLatencies = mMetrics.getCallbackLatencies().get(RejectingCallback.class);
+        assertNotNull(callbackLatencies);
+        assertEquals(3, callbackLatencies.getCount());
+        assertEquals(2, mMetrics.getListenerLatencies().get(RecordingListener.class).getCount());
+
+        LatencyHistogram dispatchSizes = mMetrics.getDispatchSizes();
+        assertEquals(2, dispatchSizes.getCount());
+        assertEquals(3, dispatchSizes.getSum());
+    }
+
+    @Test
+    public void slowCallsAreCounted()
+    {
+        PerformerMetrics metrics = new PerformerMetrics(0);
+        mEngine.setMetricsListener(metrics);
+
+        metrics.onListenerFinished(new RecordingListener(), 1, 0);
+        metrics.onListenerFinished(new RecordingListener(), 1, 1);
+
+        assertEquals(1, metrics.getSlowCallCount());
+    }
+
+    @Test
+    public void resetForgetsCalls()
+    {
+        mConnection.setSelected(mAvailableList.get(0), 0, true);
+        mMetrics.reset();
+
+        assertEquals(0, mMetrics.getCallbackCount());
+        assertEquals(0, mMetrics.getListenerCount());
+        assertEquals(0, mMetrics.getDispatchSizes().getCount());
+        assertFalse(mMetrics.getCallbackLatencies().containsKey(RejectingCallback.class));
+    }
+
+    private static class RecordingListener implements PerformerListener
+    {
+        @Override
+        public void onSelected(IPerformerEngine engine, IBaseEngineConnection owner, Selectable selectable,
+                               boolean isSelected, int position)
+        {
+        }
+
+        @Override
+        public void onSelected(IPerformerEngine engine, IBaseEngineConnection owner,
+                               List<? extends Selectable> selectableList, boolean isSelected, int[] positions)
+        {
+        }
+    }
+
+    /**
+     * Refuses the item at the last position.
+     */
+    private class RejectingCallback implements PerformerCallback
+    {
+        @Override
+        public boolean onSelection(IPerformerEngine engine, IBaseEngineConnection owner,
+                                   Selectable selectable, boolean isSelected, int position)
+        {
+            return position != mAvailableList.size() - 1;
+        }
+
+        @Override
+        public boolean onSelection(IPerformerEngine engine, IBaseEngineConnection owner,
+                                   List<? extends Selectable> selectableList, boolean isSelected, int[] positions)
+        {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SelectionListTest
+{
+    private List<TestSelectable> mItemList;
+    private SelectionList<TestSelectable> mSelectionList;
+
+    @Before
+    public void setUp()
+    {
+        mItemList = TestSelectable.createList(10);
+        mSelectionList = new SelectionList<>();
+        mSelectionList.addAll(mItemList);
+    }
+
+    @Test
+    public void addsOnlyOnce()
+    {
+        assertFalse(mSelectionList.add(mItemList.get(3)));
+        assertEquals(10, mSelectionList.size());
+    }
+
+    @Test
+    public void keepsOrderAfterRemovals()
+    {
+        mSelectionList.remove(mItemList.get(2));
+        mSelectionList.remove(mItemList.get(3));
+
+        assertEquals(8, mSelectionList.size());
+        assertEquals(mItemList.get(4), mSelectionList.get(2));
+        assertEquals(2, mSelectionList.indexOf(mItemList.get(4)));
+        assertEquals(-1, mSelectionList.indexOf(mItemList.get(3)));
+        assertFalse(mSelectionList.contains(mItemList.get(2)));
+    }
+
+    @Test
+    public void iteratesAllWhenReadDuringIteration()
+    {
+        mSelectionList.remove(mItemList.get(2));
+        mSelectionList.remove(mItemList.get(3));
+
+        List<Long> idList = new ArrayList<>();
+
+        for (TestSelectable selectable : mSelectionList) {
+            idList.add(selectable.getSelectableId());
+
+            // compacts the empty slots that the iterator has already passed
+            if (selectable.getSelectableId() == 5)
+                mSelectionList.indexOf(selectable);
+        }
+
+        assertEquals(ids(0, 1, 4, 5, 6, 7, 8, 9), idList);
+    }
+
+    @Test
+    public void iteratesAllWhenRemovingAndReadingDuringIteration()
+    {
+        mSelectionList.remove(mItemList.get(0));
+
+        List<Long> idList = new ArrayList<>();
+        Iterator<TestSelectable> iterator = mSelectionList.iterator();
+
+        while (iterator.hasNext()) {
+            TestSelectable selectable = iterator.next();
+            idList.add(selectable.getSelectableId());
+
+            if (selectable.getSelectableId() % 3 == 0)
+                iterator.remove();
+
+            mSelectionList.get(0);
+        }
+
+        assertEquals(ids(1, 2, 3, 4, 5, 6, 7, 8, 9), idList);
+        assertEquals(ids(1, 2, 4, 5, 7, 8), toIds(mSelectionList));
+        assertEquals(3, mSelectionList.indexOf(mItemList.get(5)));
+    }
+
+    @Test
+    public void removesTheRightItemAfterCompactionDuringIteration()
+    {
+        mSelectionList.remove(mItemList.get(1));
+
+        Iterator<TestSelectable> iterator = mSelectionList.iterator();
+        iterator.next();
+        iterator.next();
+
+        // the second item moves from slot 2 to slot 1
+        mSelectionList.get(0);
+        iterator.remove();
+
+        assertEquals(ids(0, 3, 4, 5, 6, 7, 8, 9), toIds(mSelectionList));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void failsWhenModifiedDuringIteration()
+    {
+        for (TestSelectable selectable : mSelectionList)
+            mSelectionList.remove(selectable);
+    }
+
+    @Test
+    public void insertsAtIndex()
+    {
+        TestSelectable selectable = new TestSelectable(100);
+
+        mSelectionList.remove(mItemList.get(1));
+        mSelectionList.add(1, selectable);
+
+        assertEquals(1, mSelectionList.indexOf(selectable));
+        assertEquals(mItemList.get(2), mSelectionList.get(2));
+        assertTrue(mSelectionList.contains(selectable));
+    }
+
+    private static List<Long> ids(long... ids)
+    {
+        List<Long> idList = new ArrayList<>(ids.length);
+
+        for (long id : ids)
+            idList.add(id);
+
+        return idList;
+    }
+
+    private static List<Long> toIds(List<TestSelectable> list)
+    {
+        List<Long> idList = new ArrayList<>(list.size());
+
+        for (TestSelectable selectable : list)
+            idList.add(selectable.getSelectableId());
+
+        return idList;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.actionperformer;
+
+import com.genonbeta.android.framework.object.StableSelectable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An item that is only equal to itself, so that two instances with the same id can stand for the same item before
+ * and after a list is reloaded.
+ */
+public class TestSelectable implements StableSelectable
+{
+    private final long mId;
+    private boolean mSelected;
+
+    public TestSelectable(long id)
+    {
+        mId = id;
+    }
+
+    public static List<TestSelectable> createList(int size)
+    {
+        List<TestSelectable> list = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++)
+            list.add(new TestSelectable(i));
+
+        return list;
+    }
+
+    @Override
+    public long getSelectableId()
+    {
+        return mId;
+    }
+
+    @Override
+    public String getSelectableTitle()
+    {
+        return String.valueOf(mId);
+    }
+
+    @Override
+    public boolean isSelectableSelected()
+    {
+        return mSelected;
+    }
+
+    @Override
+    public boolean setSelectableSelected(boolean selected)
+    {
+        mSelected = selected;
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TestSelectable{" + mId + "}";
+    }
+}
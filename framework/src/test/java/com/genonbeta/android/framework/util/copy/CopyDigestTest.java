@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CopyDigestTest
+{
+    @Test
+    public void messageDigestMatchesTheJdk() throws Exception
+    {
+        byte[] bytes = createContent(5000);
+        CopyDigest digest = CopyDigest.getInstance(CopyDigest.MD5);
+
+        digest.update(bytes, 0, 1000);
+        digest.update(bytes, 1000, 4000);
+
+        assertEquals("MD5", digest.getAlgorithm());
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(bytes), digest.digest());
+    }
+
+    @Test
+    public void crc32IsBigEndian() throws Exception
+    {
+        byte[] bytes = createContent(3000);
+        CopyDigest digest = CopyDigest.getInstance("crc32");
+        CRC32 crc = new CRC32();
+
+        crc.update(bytes, 0, bytes.length);
+        digest.update(bytes, 0, bytes.length);
+
+        assertEquals(CopyDigest.CRC32, digest.getAlgorithm());
+        assertEquals(String.format("%08x", crc.getValue()), CopyDigest.toHex(digest.digest()));
+    }
+
+    @Test
+    public void crc32cIsSupported() throws Exception
+    {
+        CopyDigest digest = CopyDigest.getInstance(CopyDigest.CRC32C);
+        byte[] bytes = "123456789".getBytes("US-ASCII");
+
+        digest.update(bytes, 0, bytes.length);
+
+        assertEquals("e3069283", CopyDigest.toHex(digest.digest()));
+    }
+
+    @Test
+    public void bufferPositionIsKept() throws Exception
+    {
+        byte[] bytes = createContent(20000);
+
+        for (String algorithm : new String[]{CopyDigest.SHA_256, CopyDigest.CRC32C}) {
+            CopyDigest bufferDigest = CopyDigest.getInstance(algorithm);
+            CopyDigest arrayDigest = CopyDigest.getInstance(algorithm);
+            ByteBuffer directBuffer = ByteBuffer.allocateDirect(bytes.length);
+            ByteBuffer heapBuffer = ByteBuffer.wrap(bytes, 100, 10000);
+
+            directBuffer.put(bytes).flip();
+            directBuffer.position(100);
+
+            bufferDigest.update(directBuffer);
+            bufferDigest.update(heapBuffer);
+            arrayDigest.update(bytes, 100, bytes.length - 100);
+            arrayDigest.update(bytes, 100, 10000);
+
+            assertEquals(100, directBuffer.position());
+            assertEquals(100, heapBuffer.position());
+            assertArrayEquals(arrayDigest.digest(), bufferDigest.digest());
+        }
+    }
+
+    @Test
+    public void hexIsLowercase()
+    {
+        assertEquals("00ff7f80", CopyDigest.toHex(new byte[]{0, (byte) 0xff, 0x7f, (byte) 0x80}));
+    }
+
+    private static byte[] createContent(int length)
+    {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+}
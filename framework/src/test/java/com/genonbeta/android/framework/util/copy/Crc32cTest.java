@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class Crc32cTest
+{
+    @Test
+    public void checkValue() throws Exception
+    {
+        assertEquals(0xE3069283L, checksum("123456789".getBytes("US-ASCII")));
+    }
+
+    /**
+     * The test vectors from RFC 3720, B.4.
+     */
+    @Test
+    public void rfc3720Vectors()
+    {
+        byte[] bytes = new byte[32];
+
+        assertEquals(0x8A9136AAL, checksum(bytes));
+
+        Arrays.fill(bytes, (byte) 0xff);
+        assertEquals(0x62A8AB43L, checksum(bytes));
+
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) i;
+
+        assertEquals(0x46DD794EL, checksum(bytes));
+
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) (31 - i);
+
+        assertEquals(0x113FDB5CL, checksum(bytes));
+    }
+
+    @Test
+    public void emptyInputIsZero()
+    {
+        assertEquals(0, new Crc32c().getValue());
+    }
+
+    @Test
+    public void piecesGiveTheSameValue()
+    {
+        byte[] bytes = new byte[1000];
+        new Random(7).nextBytes(bytes);
+
+        long expected = checksum(bytes);
+        Crc32c crc = new Crc32c();
+
+        // uneven pieces that don't line up with the 8 byte steps
+        crc.update(bytes, 0, 3);
+        crc.update(bytes[3]);
+        crc.update(bytes, 4, 500);
+        crc.update(bytes, 504, 496);
+
+        assertEquals(expected, crc.getValue());
+    }
+
+    @Test
+    public void resetStartsOver()
+    {
+        Crc32c crc = new Crc32c();
+
+        crc.update(new byte[]{1, 2, 3}, 0, 3);
+        crc.reset();
+        crc.update(new byte[32], 0, 32);
+
+        assertEquals(0x8A9136AAL, crc.getValue());
+    }
+
+    private static long checksum(byte[] bytes)
+    {
+        Crc32c crc = new Crc32c();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import com.genonbeta.android.framework.util.Stoppable;
+import com.genonbeta.android.framework.util.StoppableImpl;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PipelinedCopierTest
+{
+    private static final int TIMEOUT = 10000;
+
+    @Test
+    public void contentIsCopiedInOrder() throws Exception
+    {
+        byte[] content = createContent(100000);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        long copied = PipelinedCopier.copy(new ByteArrayInputStream(content), outputStream, new StoppableImpl(), 1000,
+                3, TIMEOUT);
+
+        assertEquals(content.length, copied);
+        assertArrayEquals(content, outputStream.toByteArray());
+    }
+
+    @Test
+    public void singleBufferIsEnough() throws Exception
+    {
+        byte[] content = createContent(5000);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        PipelinedCopier.copy(new ByteArrayInputStream(content), outputStream, new StoppableImpl(), 64, 1, TIMEOUT);
+
+        assertArrayEquals(content, outputStream.toByteArray());
+    }
+
+    @Test
+    public void slowWriterGetsEverything() throws Exception
+    {
+        byte[] content = createContent(20000);
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OutputStream slowStream = new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+                outputStream.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+
+                outputStream.write(b, off, len);
+            }
+        };
+
+        PipelinedCopier.copy(new ByteArrayInputStream(content), slowStream, new StoppableImpl(), 512, 4, TIMEOUT);
+
+        assertArrayEquals(content, outputStream.toByteArray());
+    }
+
+    @Test
+    public void digestAndProgressFollowTheWrites() throws Exception
+    {
+        byte[] content = createContent(30000);
+        CopyDigest digest = CopyDigest.getInstance(CopyDigest.SHA_256);
+        ProgressTracker tracker = new ProgressTracker(new CopyProgressListener()
+        {
+            @Override
+            public void onProgress(CopyProgress progress)
+            {
+            }
+        }, 0, content.length);
+
+        PipelinedCopier.copy(new ByteArrayInputStream(content), new ByteArrayOutputStream(), new StoppableImpl(),
+                1024, 2, TIMEOUT, tracker, digest);
+
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digest.digest());
+        assertEquals(content.length, tracker.getProgress().getTransferredBytes());
+    }
+
+    @Test
+    public void readerErrorIsThrown() throws Exception
+    {
+        InputStream failingStream = new InputStream()
+        {
+            private int mRead = 0;
+
+            @Override
+            public int read() throws IOException
+            {
+                if (++mRead > 3000)
+                    throw new IOException("Source failed");
+
+                return 1;
+            }
+        };
+
+        try {
+            PipelinedCopier.copy(failingStream, new ByteArrayOutputStream(), new StoppableImpl(), 256, 2, TIMEOUT);
+            fail("The error of the reader should be thrown");
+        } catch (IOException e) {
+            assertEquals("Source failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void interruptedTaskFails() throws Exception
+    {
+        Stoppable stoppable = new StoppableImpl();
+        InputStream endlessStream = new InputStream()
+        {
+            @Override
+            public int read()
+            {
+                return 0;
+            }
+        };
+
+        stoppable.interrupt();
+
+        try {
+            PipelinedCopier.copy(endlessStream, new ByteArrayOutputStream(), stoppable, 256, 2, TIMEOUT);
+            fail("The copy should stop when the task is interrupted");
+        } catch (Exception e) {
+            assertTrue(stoppable.isInterrupted());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void depthShouldBePositive() throws Exception
+    {
+        PipelinedCopier.copy(new ByteArrayInputStream(new byte[1]), new ByteArrayOutputStream(), new StoppableImpl(),
+                16, 0, TIMEOUT);
+    }
+
+    private static byte[] createContent(int length)
+    {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+}
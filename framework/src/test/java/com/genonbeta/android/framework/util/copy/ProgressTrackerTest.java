@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressTrackerTest
+{
+    private final List<Long> mReportedBytes = new ArrayList<>();
+    private final CopyProgressListener mListener = new CopyProgressListener()
+    {
+        @Override
+        public void onProgress(CopyProgress progress)
+        {
+            mReportedBytes.add(progress.getTransferredBytes());
+        }
+    };
+
+    @Test
+    public void reportsAreLimitedByTheInterval()
+    {
+        ProgressTracker tracker = new ProgressTracker(mListener, 60000, 300);
+
+        tracker.onTransferred(100);
+        tracker.onTransferred(100);
+        tracker.onTransferred(100);
+
+        assertTrue(mReportedBytes.isEmpty());
+
+        tracker.finish();
+
+        assertEquals(1, mReportedBytes.size());
+        assertEquals(300, (long) mReportedBytes.get(0));
+        assertTrue(tracker.getProgress().isFinished());
+        assertEquals(0, tracker.getProgress().getEta());
+    }
+
+    @Test
+    public void everyChunkIsReportedWithoutInterval()
+    {
+        ProgressTracker tracker = new ProgressTracker(mListener, 0, 300);
+
+        tracker.onTransferred(100);
+        tracker.onTransferred(100);
+
+        assertEquals(2, mReportedBytes.size());
+        assertEquals(200, (long) mReportedBytes.get(1));
+        assertFalse(tracker.getProgress().isFinished());
+    }
+
+    @Test
+    public void skippedBytesAreCountedWithoutThroughput()
+    {
+        ProgressTracker tracker = new ProgressTracker(mListener, 60000, 1000);
+
+        tracker.onSkipped(400);
+        tracker.finish();
+
+        CopyProgress progress = tracker.getProgress();
+        assertEquals(400, progress.getTransferredBytes());
+        assertEquals(0, progress.getThroughput(), 0);
+    }
+
+    @Test
+    public void etaIsUnknownWithoutTotal()
+    {
+        ProgressTracker tracker = new ProgressTracker(mListener, 0, -1);
+
+        tracker.onTransferred(100);
+
+        assertEquals(-1, tracker.getProgress().getEta());
+        assertEquals(0, tracker.getProgress().getRemainingTime().getElapsedTime());
+    }
+
+    @Test
+    public void noTrackerWithoutListener()
+    {
+        assertNull(ProgressTracker.from(new CopyOptions(), 100));
+    }
+}
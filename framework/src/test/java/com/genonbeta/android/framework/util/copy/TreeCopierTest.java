@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2020 Veli Tasalı
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.genonbeta.android.framework.util.copy;
+
+import android.content.ContextWrapper;
+import com.genonbeta.android.framework.io.DocumentFile;
+import com.genonbeta.android.framework.util.StoppableImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TreeCopierTest
+{
+    private File mDirectory;
+    private File mSource;
+    private File mDestination;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDirectory = File.createTempFile("TreeCopierTest", "");
+
+        if (!mDirectory.delete() || !mDirectory.mkdir())
+            throw new IOException("Could not create " + mDirectory);
+
+        mSource = new File(mDirectory, "source");
+        mDestination = new File(mDirectory, "destination");
+
+        assertTrue(mDestination.mkdir());
+        write(new File(mSource, "a.txt"), "a");
+        write(new File(mSource, "b.txt"), "bb");
+        write(new File(mSource, "sub/c.txt"), "ccc");
+        write(new File(mSource, "sub/deeper/d.txt"), "dddd");
+        assertTrue(new File(mSource, "empty").mkdir());
+    }
+
+    @After
+    public void tearDown()
+    {
+        delete(mDirectory);
+    }
+
+    @Test
+    public void treeIsCopied() throws Exception
+    {
+        DocumentFile copy = createCopier().copy(DocumentFile.fromFile(mSource), DocumentFile.fromFile(mDestination));
+
+        assertEquals("source", copy.getName());
+        verifyCopy(new File(mDestination, "source"));
+        verifyCopy(mSource);
+    }
+
+    @Test
+    public void existingFilesAreOverwritten() throws Exception
+    {
+        write(new File(mDestination, "source/a.txt"), "old content");
+        write(new File(mDestination, "source/sub/c.txt"), "old content");
+
+        createCopier().copy(DocumentFile.fromFile(mSource), DocumentFile.fromFile(mDestination));
+
+        verifyCopy(new File(mDestination, "source"));
+    }
+
+    @Test
+    public void treeIsMoved() throws Exception
+    {
+        createCopier().move(DocumentFile.fromFile(mSource), DocumentFile.fromFile(mDestination));
+
+        verifyCopy(new File(mDestination, "source"));
+        assertFalse(mSource.exists());
+    }
+
+    @Test
+    public void progressCoversAllFiles() throws Exception
+    {
+        final long[] lastTransferred = new long[1];
+        TreeCopier copier = createCopier();
+        CopyOptions options = new CopyOptions();
+
+        options.setProgressInterval(0);
+        options.setProgressListener(new CopyProgressListener()
+        {
+            @Override
+            public void onProgress(CopyProgress progress)
+            {
+                lastTransferred[0] = progress.getTransferredBytes();
+                assertEquals(10, progress.getTotalBytes());
+            }
+        });
+        copier.setOptions(options);
+        copier.copy(DocumentFile.fromFile(mSource), DocumentFile.fromFile(mDestination));
+
+        assertEquals(10, lastTransferred[0]);
+    }
+
+    @Test
+    public void fileInPlaceOfDirectoryFails() throws Exception
+    {
+        write(new File(mDestination, "source/sub"), "not a directory");
+
+        try {
+            createCopier().copy(DocumentFile.fromFile(mSource), DocumentFile.fromFile(mDestination));
+            fail("A file with the name of a directory should fail the copy");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void stoppedTaskFails() throws Exception
+    {
+        StoppableImpl stoppable = new StoppableImpl();
+        stoppable.interrupt();
+
+        new TreeCopier(new ContextWrapper(null), stoppable, 8192, 5000).copy(DocumentFile.fromFile(mSource),
+                DocumentFile.fromFile(mDestination));
+    }
+
+    private TreeCopier createCopier()
+    {
+        // the local files are copied without a content resolver
+        TreeCopier copier = new TreeCopier(new ContextWrapper(null), new StoppableImpl(), 8192, 5000);
+        copier.setMaxConcurrency(3);
+        return copier;
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+
+        if (children != null)
+            for (File child : children)
+                delete(child);
+
+        file.delete();
+    }
+
+    private static String read(File file) throws IOException
+    {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+            byte[] content = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(content);
+            return new String(content, "UTF-8");
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void verifyCopy(File directory) throws IOException
+    {
+        assertEquals("a", read(new File(directory, "a.txt")));
+        assertEquals("bb", read(new File(directory, "b.txt")));
+        assertEquals("ccc", read(new File(directory, "sub/c.txt")));
+        assertEquals("dddd", read(new File(directory, "sub/deeper/d.txt")));
+        assertTrue(new File(directory, "empty").isDirectory());
+        assertArrayEquals(new String[]{"a.txt", "b.txt", "empty", "sub"}, sorted(directory.list()));
+    }
+
+    private static String[] sorted(String[] names)
+    {
+        Arrays.sort(names);
+        return names;
+    }
+
+    private static void write(File file, String content) throws IOException
+    {
+        File parent = file.getParentFile();
+
+        if (!parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("Could not create " + parent);
+
+        FileOutputStream outputStream = new FileOutputStream(file);
+
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+}